@@ -1,11 +1,13 @@
 import greenfoot.*;  // (World, Actor, GreenfootImage, Greenfoot und MouseInfo)
 import de.wwu.jmrigreenfootinterface.JMRI;
 import de.wwu.jmrigreenfootinterface.items.*;
+import de.wwu.jmrigreenfootinterface.occupancy.*;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
 import java.util.Set;
 import java.util.HashSet;
-import org.json.JSONObject;
+import java.util.concurrent.ConcurrentHashMap;
 import java.io.*;
 
 /**
@@ -23,6 +25,30 @@ public class PanelWorld extends World
      * only every n such calls.
      */
     int tickCounter = -1;
+    
+    /**
+     * The name of the train on each layout block, as reported by JMRI. Filled by
+     * the occupancy listener, which is called on a different thread.
+     */
+    private Map<String, String> trainsOnLayoutBlocks = new ConcurrentHashMap<>();
+    
+    /**
+     * Whether trainsOnLayoutBlocks has changed since the train names were drawn
+     */
+    private volatile boolean trainsOnLayoutBlocksChanged = true;
+    
+    /**
+     * Keeps trainsOnLayoutBlocks up to date; registered with JMRI when the
+     * scenario is started for the first time.
+     */
+    private OccupancyListener occupancyListener = null;
+    
+    /**
+     * The occupancy listener of the world created most recently. A new world is
+     * created whenever the scenario is reset, so the listener of the previous
+     * world has to be deregistered.
+     */
+    private static OccupancyListener registeredOccupancyListener = null;
     /**
      * Constructs the world with a fixed number of cells visually delineated by a faint
      * greyish background grid. In addition, the objects placed in the world are initialised.
@@ -38,6 +64,31 @@ public class PanelWorld extends World
     
     @Override
     public void started() {
+        // Stay informed about trains entering and exiting layout blocks; trains
+        // already located are reported right away when registering
+        if(occupancyListener == null) {
+            if(registeredOccupancyListener != null) {
+                JMRI.getInterface().removeOccupancyListener(registeredOccupancyListener);
+            }
+            occupancyListener = new OccupancyListener() {
+                @Override
+                public void trainEntered(String blockName, String trainName) {
+                    trainsOnLayoutBlocks.put(blockName, trainName);
+                    trainsOnLayoutBlocksChanged = true;
+                }
+                
+                @Override
+                public void trainExited(String blockName, String trainName) {
+                    trainsOnLayoutBlocks.remove(blockName, trainName);
+                    trainsOnLayoutBlocksChanged = true;
+                }
+            };
+            JMRI.getInterface().addOccupancyListener(occupancyListener);
+            registeredOccupancyListener = occupancyListener;
+        }
+        // Poll the reporters only while the scenario is running
+        JMRI.getInterface().startOccupancyTracking();
+        
         // Uncomment the following block to display the state of the turnouts even before starting the
         // scenario via the Play or Act button. Attention: A connection with JMRI will then be
         // attempted even before such a click. If this fails, error messages are displayed before
@@ -52,6 +103,12 @@ public class PanelWorld extends World
         */
     }
     
+    @Override
+    public void stopped() {
+        // Do not poll the reporters while the scenario is paused
+        JMRI.getInterface().pauseOccupancyTracking();
+    }
+    
     @Override
     public void act() {        
         // Clicks on turnouts
@@ -76,26 +133,22 @@ public class PanelWorld extends World
             getObjects(Curve.class).forEach(t -> t.updateImage());
             getObjects(TrackStraight.class).forEach(t -> t.updateImage());
             getObjects(Turnout.class).forEach(t -> t.updateImage());
-                        try
-            {
-                // Write names of trains onto layout blocks
+            
+            // Write names of trains onto layout blocks, if they have changed
+            if(trainsOnLayoutBlocksChanged) {
+                trainsOnLayoutBlocksChanged = false;
                 displayTrainIds();
- 
-
             }
-            catch (org.json.JSONException jsone)
-            {
-                jsone.printStackTrace();
-            }
-            //System.out.println(JMRI.getInterface().getTrainOnLayoutBlock("IRreporter1"));
         }
         
     }
     
     /**
      * Write the names of the trains near the layout blocks they currently occupy.
+     * The names are taken from the occupation reported to the occupancy listener,
+     * so JMRI is not contacted.
      */
-    private void displayTrainIds() throws org.json.JSONException {
+    private void displayTrainIds() {
         // collect all kinds of tracks in a single list
         List<TrackStraight> tracksA = getObjects(TrackStraight.class);
         List<Curve>         tracksB = getObjects(Curve.class);
@@ -120,23 +173,20 @@ public class PanelWorld extends World
         
         // for every layout block...
         for(String layoutBlockName : layoutBlockNames) {
-            // 1. query name of occupying train
-
-            
-            JSONObject queryResult = JMRI.getInterface().getTrainOnLayoutBlock(layoutBlockName);
+            // 1. look up name of occupying train
+            String trainName = trainsOnLayoutBlocks.get(layoutBlockName);
            
             // no such train on this layout block?
             // --> continue with next layout block
-            if(queryResult == null  || !queryResult.has("data") || !queryResult.getJSONObject("data").has("name")) {
+            if(trainName == null) {
                 continue;
             } // else (implicit)
-            String trainName = queryResult.getJSONObject("data").getString("name");
             //Rückmeldung in Konsole
             //System.out.println("Der Zug: " + trainName + " befindet sich auf Block: " + layoutBlockName);
             // 2. get all the tracks belonging to that layout block
             List<Track> tracksBelongingToBlock = new ArrayList<>();
             for(Track t : allTracks) {
-                if(t.getLayoutBlock()==(layoutBlockName)) {
+                if(layoutBlockName.equals(t.getLayoutBlock())) {
                     tracksBelongingToBlock.add(t);
                 }
 
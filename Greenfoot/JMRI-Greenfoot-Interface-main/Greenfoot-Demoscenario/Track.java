@@ -77,12 +77,8 @@ public abstract class Track extends Actor
             return false;
         }
         
-        try {
-            int result = (int) JMRI.getInterface().getProperty("layoutBlocks", layoutBlockId, "state");
-            return result == 2 ? true : false;
-        } catch(Exception e) {
-            return false;
-        }
+        // answered from the occupation collected in the background, without contacting JMRI
+        return JMRI.getInterface().isBlockOccupied(layoutBlockId);
     }
     
     /**
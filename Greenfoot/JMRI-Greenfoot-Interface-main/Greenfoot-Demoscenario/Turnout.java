@@ -1,6 +1,7 @@
 import greenfoot.*;  // (World, Actor, GreenfootImage, Greenfoot and MouseInfo)
 import de.wwu.jmrigreenfootinterface.*;
 import de.wwu.jmrigreenfootinterface.items.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Represents a turnout as a special type of track.
@@ -16,6 +17,16 @@ public class Turnout extends Track
      */
     private String jmriSystemName = "";
     
+    /**
+     * The state most recently requested by setState
+     */
+    private TurnoutState requestedState = null;
+    
+    /**
+     * The confirmation by JMRI that the requested state has been taken
+     */
+    private CompletableFuture<Boolean> requestedStateConfirmation = null;
+    
     /**
      * Creates a turnout with the given type, assigned to the layout block
      * with the given name and the given JMRI system name of the physical
@@ -48,26 +59,33 @@ public class Turnout extends Track
     }
     
     /**
-     * Sets the state of the turnout
+     * Sets the state of the turnout. The method does not wait for JMRI
+     * to confirm the new state.
      * 
      * @param state The state to be set
      */
     public void setState(TurnoutState state) {    
-        JMRI.getInterface().setProperty("turnout", jmriSystemName, "state", state.getStateCode());
+        requestedState = state;
+        requestedStateConfirmation = JMRI.getInterface().setPropertyDeferred("turnout", jmriSystemName, "state", state.getStateCode());
     }
     
     /**
      * Determines the condition of the turnout. For this purpose,
-     * JMRI is contacted and the current status is queried.
+     * JMRI is contacted and the current status is queried. As long as
+     * a requested state has not been confirmed by JMRI, that state is
+     * returned instead.
      * 
      * @return The state of the turnout; may be TurnoutState.UNKNOWN if it
      * cannot be determined.
      */
     public TurnoutState getState() {
+        if(requestedStateConfirmation != null && !requestedStateConfirmation.isDone()) {
+            return requestedState;
+        }
+        
         try {
         // request current state from JMRI
-            int stateCode = (int) JMRI.getInterface().getProperty("turnout", jmriSystemName, "state");
-            return TurnoutState.fromCode(stateCode);
+            return JMRI.getInterface().getTurnout(jmriSystemName).getState();
         } catch(Exception e) {
             System.err.println("Requesting turnout state from JMRI failed: " + e.getMessage() + "\nReturning UNKNOWN state instead.");
             return TurnoutState.UNKNOWN;
@@ -0,0 +1,204 @@
+package de.wwu.jmrigreenfootinterface;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import de.wwu.jmrigreenfootinterface.items.LayoutBlock;
+import de.wwu.jmrigreenfootinterface.items.MovingDirection;
+import de.wwu.jmrigreenfootinterface.items.Reporter;
+import de.wwu.jmrigreenfootinterface.items.RosterEntry;
+import de.wwu.jmrigreenfootinterface.items.TurnoutItem;
+
+/**
+ * The asynchronous counterpart of the JMRIInterface. Every method returns
+ * immediately with a CompletableFuture, while the actual communication with
+ * JMRI takes place on a dedicated I/O thread. This way, callers such as the
+ * act() method of a Greenfoot world are never blocked by a slow response and
+ * can issue several requests in parallel.<br>
+ * The methods behave like their counterparts in JMRIInterface, whose
+ * documentation applies accordingly. If such a method fails with an exception,
+ * the returned future is completed exceptionally.
+ */
+public interface AsyncJMRIInterface {
+
+	// JMRI json functions
+
+	/**
+	 * @see JMRIInterface#listTypes()
+	 * @return A future of the list of types supported by JMRI
+	 */
+	public CompletableFuture<JSONArray> listTypes();
+
+	/**
+	 * @see JMRIInterface#getType(String)
+	 * @param type The given type of the entities
+	 * @return A future of the list of entities of the given type
+	 */
+	public CompletableFuture<JSONArray> getType(String type);
+
+	/**
+	 * @see JMRIInterface#getItem(String, String)
+	 * @param type     The given type of the entity
+	 * @param itemName The given name of the entity
+	 * @return A future of the entity of the given type with the given name
+	 */
+	public CompletableFuture<JSONObject> getItem(String type, String itemName);
+
+	/**
+	 * @see JMRIInterface#getProperty(String, String, String)
+	 * @param type         The given type of the entity
+	 * @param itemName     The given name of the entity
+	 * @param propertyName The given name of the entitiy's property
+	 * @return A future of the value of the given property
+	 */
+	public CompletableFuture<Object> getProperty(String type, String itemName, String propertyName);
+
+	/**
+	 * @see JMRIInterface#setProperty(String, String, String, Object)
+	 * @param type         The given type of the entity
+	 * @param itemName     The given name of the entity
+	 * @param propertyName The given name of the entitiy's property
+	 * @param value        The value that the property should have
+	 * @return A future of true if the property has actually taken the given value
+	 */
+	public CompletableFuture<Boolean> setProperty(String type, String itemName, String propertyName, Object value);
+
+	/**
+	 * @see JMRIInterface#setProperties(List)
+	 * @param writes The writes to perform
+	 * @return A future of the success of every write, in the same order
+	 */
+	public CompletableFuture<List<Boolean>> setProperties(List<PropertyWrite> writes);
+
+	/**
+	 * @see JMRIInterface#getTrainOnLayoutBlock(String)
+	 * @param layoutBlockName The name of the layout block
+	 * @return A future of the data of the train currently on the layout block;
+	 *         completed with null if no such train can be identified.
+	 */
+	public CompletableFuture<JSONObject> getTrainOnLayoutBlock(String layoutBlockName);
+
+	// JMRI json functions returning decoded items
+
+	/**
+	 * @see JMRIInterface#getReporters()
+	 * @return A future of the reporters
+	 */
+	public CompletableFuture<List<Reporter>> getReporters();
+
+	/**
+	 * @see JMRIInterface#getLayoutBlock(String)
+	 * @param layoutBlockName The name of the layout block
+	 * @return A future of the layout block
+	 */
+	public CompletableFuture<LayoutBlock> getLayoutBlock(String layoutBlockName);
+
+	/**
+	 * @see JMRIInterface#getTurnout(String)
+	 * @param turnoutName The name of the turnout
+	 * @return A future of the turnout
+	 */
+	public CompletableFuture<TurnoutItem> getTurnout(String turnoutName);
+
+	/**
+	 * @see JMRIInterface#getRosterEntries()
+	 * @return A future of the roster entries
+	 */
+	public CompletableFuture<List<RosterEntry>> getRosterEntries();
+
+	/**
+	 * @see JMRIInterface#getRosterEntry(String)
+	 * @param trainName The name of the train
+	 * @return A future of the roster entry
+	 */
+	public CompletableFuture<RosterEntry> getRosterEntry(String trainName);
+
+	// JMRI WiThrottle functions
+
+	/**
+	 * @see JMRIInterface#addLocomotive(String, String)
+	 * @param locomotiveReference The identifier of the locomotive to be controlled
+	 * @param address             The DCC address of the locomotive
+	 * @return A future completed when the command has been sent
+	 */
+	public CompletableFuture<Void> addLocomotive(String locomotiveReference, String address);
+
+	/**
+	 * @see JMRIInterface#removeLocomotive(String)
+	 * @param locomotiveReference The identifier of the locomotive to be controlled
+	 * @return A future completed when the command has been sent
+	 */
+	public CompletableFuture<Void> removeLocomotive(String locomotiveReference);
+
+	/**
+	 * @see JMRIInterface#removeAllLocomotives()
+	 * @return A future completed when the command has been sent
+	 */
+	public CompletableFuture<Void> removeAllLocomotives();
+
+	/**
+	 * @see JMRIInterface#setFunctionKeyPressed(String, int, boolean)
+	 * @param locomotiveReference The identifier of the locomotive to be controlled
+	 * @param functionKeyNumber   The number of the function key, e.g. 1 or 12
+	 * @param pressed             true if the key is to be set as pressed
+	 * @return A future completed when the command has been sent
+	 */
+	public CompletableFuture<Void> setFunctionKeyPressed(String locomotiveReference, int functionKeyNumber, boolean pressed);
+
+	/**
+	 * @see JMRIInterface#setFunctionKeyLocking(String, int, boolean)
+	 * @param locomotiveReference The identifier of the locomotive to be controlled
+	 * @param functionKeyNumber   The number of the function key, e.g. 1 or 12
+	 * @param locking             true, if the function key is to remain pressed
+	 * @return A future completed when the command has been sent
+	 */
+	public CompletableFuture<Void> setFunctionKeyLocking(String locomotiveReference, int functionKeyNumber, boolean locking);
+
+	/**
+	 * @see JMRIInterface#setMovingDirection(String, MovingDirection)
+	 * @param locomotiveReference The identifier of the locomotive to be controlled
+	 * @param movingDirection     The desired direction of travel
+	 * @return A future completed when the command has been sent
+	 */
+	public CompletableFuture<Void> setMovingDirection(String locomotiveReference, MovingDirection movingDirection);
+
+	/**
+	 * @see JMRIInterface#setSpeed(String, int)
+	 * @param locomotiveReference The identifier of the locomotive to be controlled
+	 * @param speed               The speed that the locomotive should have.
+	 * @return A future completed when the command has been sent
+	 */
+	public CompletableFuture<Void> setSpeed(String locomotiveReference, int speed);
+
+	/**
+	 * @see JMRIInterface#getMovingDirection(String)
+	 * @param locomotiveReference The identifier of the locomotive to be controlled
+	 * @return A future of the current driving direction of the locomotive
+	 */
+	public CompletableFuture<MovingDirection> getMovingDirection(String locomotiveReference);
+
+	/**
+	 * @see JMRIInterface#invertMovingDirection(String)
+	 * @param locomotiveReference The identifier of the locomotive to be controlled
+	 * @return A future completed when the command has been sent
+	 */
+	public CompletableFuture<Void> invertMovingDirection(String locomotiveReference);
+
+	/**
+	 * @see JMRIInterface#getSpeed(String)
+	 * @param locomotiveReference The identifier of the locomotive to be controlled
+	 * @return A future of the current speed of the locomotive
+	 */
+	public CompletableFuture<Integer> getSpeed(String locomotiveReference);
+
+	/**
+	 * @see JMRIInterface#doEmergencyStop(String)
+	 * @param locomotiveReference The identifier of the locomotive to be controlled
+	 * @return A future completed when the command has been sent
+	 */
+	public CompletableFuture<Void> doEmergencyStop(String locomotiveReference);
+
+}
@@ -0,0 +1,185 @@
+package de.wwu.jmrigreenfootinterface;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import de.wwu.jmrigreenfootinterface.items.LayoutBlock;
+import de.wwu.jmrigreenfootinterface.items.MovingDirection;
+import de.wwu.jmrigreenfootinterface.items.Reporter;
+import de.wwu.jmrigreenfootinterface.items.RosterEntry;
+import de.wwu.jmrigreenfootinterface.items.TurnoutItem;
+
+/**
+ * The implementation of the AsyncJMRIInterface. It delegates every call to a
+ * (blocking) JMRIInterface on dedicated I/O threads.<br>
+ * Requests to the JMRI WebServer run on a pool of threads, so they can be
+ * processed in parallel. Commands to the WiThrottle server run on a single
+ * thread, because the WiThrottle protocol relies on their order.
+ */
+public class AsyncJMRIInterfaceImplementation implements AsyncJMRIInterface {
+
+	/**
+	 * The number of threads processing requests to the JMRI WebServer
+	 */
+	private static final int WEBSERVER_THREADS = 4;
+
+	private JMRIInterface jmriInterface;
+
+	private ExecutorService webExecutor;
+	private ExecutorService throttleExecutor;
+
+	/**
+	 * Creates the asynchronous interface delegating to the given (blocking)
+	 * interface.
+	 * 
+	 * @param jmriInterface The interface to delegate to
+	 */
+	public AsyncJMRIInterfaceImplementation(JMRIInterface jmriInterface) {
+		this.jmriInterface = jmriInterface;
+		this.webExecutor = Executors.newFixedThreadPool(WEBSERVER_THREADS, daemonThreads("JMRI web I/O"));
+		this.throttleExecutor = Executors.newSingleThreadExecutor(daemonThreads("JMRI throttle I/O"));
+	}
+
+	/**
+	 * Creates a factory for named daemon threads, which do not prevent the JVM
+	 * from exiting.
+	 * 
+	 * @param name The base name of the threads
+	 * @return The thread factory
+	 */
+	private static ThreadFactory daemonThreads(String name) {
+		AtomicInteger counter = new AtomicInteger();
+		return r -> {
+			Thread thread = new Thread(r, name + " #" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	// ============ JMRI json functions section ============
+
+	@Override
+	public CompletableFuture<JSONArray> listTypes() {
+		return CompletableFuture.supplyAsync(() -> jmriInterface.listTypes(), webExecutor);
+	}
+
+	@Override
+	public CompletableFuture<JSONArray> getType(String type) {
+		return CompletableFuture.supplyAsync(() -> jmriInterface.getType(type), webExecutor);
+	}
+
+	@Override
+	public CompletableFuture<JSONObject> getItem(String type, String itemName) {
+		return CompletableFuture.supplyAsync(() -> jmriInterface.getItem(type, itemName), webExecutor);
+	}
+
+	@Override
+	public CompletableFuture<Object> getProperty(String type, String itemName, String propertyName) {
+		return CompletableFuture.supplyAsync(() -> jmriInterface.getProperty(type, itemName, propertyName), webExecutor);
+	}
+
+	@Override
+	public CompletableFuture<Boolean> setProperty(String type, String itemName, String propertyName, Object value) {
+		return CompletableFuture.supplyAsync(() -> jmriInterface.setProperty(type, itemName, propertyName, value), webExecutor);
+	}
+
+	@Override
+	public CompletableFuture<List<Boolean>> setProperties(List<PropertyWrite> writes) {
+		return CompletableFuture.supplyAsync(() -> jmriInterface.setProperties(writes), webExecutor);
+	}
+
+	@Override
+	public CompletableFuture<JSONObject> getTrainOnLayoutBlock(String layoutBlockName) {
+		return CompletableFuture.supplyAsync(() -> jmriInterface.getTrainOnLayoutBlock(layoutBlockName), webExecutor);
+	}
+
+	@Override
+	public CompletableFuture<List<Reporter>> getReporters() {
+		return CompletableFuture.supplyAsync(() -> jmriInterface.getReporters(), webExecutor);
+	}
+
+	@Override
+	public CompletableFuture<LayoutBlock> getLayoutBlock(String layoutBlockName) {
+		return CompletableFuture.supplyAsync(() -> jmriInterface.getLayoutBlock(layoutBlockName), webExecutor);
+	}
+
+	@Override
+	public CompletableFuture<TurnoutItem> getTurnout(String turnoutName) {
+		return CompletableFuture.supplyAsync(() -> jmriInterface.getTurnout(turnoutName), webExecutor);
+	}
+
+	@Override
+	public CompletableFuture<List<RosterEntry>> getRosterEntries() {
+		return CompletableFuture.supplyAsync(() -> jmriInterface.getRosterEntries(), webExecutor);
+	}
+
+	@Override
+	public CompletableFuture<RosterEntry> getRosterEntry(String trainName) {
+		return CompletableFuture.supplyAsync(() -> jmriInterface.getRosterEntry(trainName), webExecutor);
+	}
+
+	// ============ JMRI WiThrottle functions section ============
+
+	@Override
+	public CompletableFuture<Void> addLocomotive(String locomotiveReference, String address) {
+		return CompletableFuture.runAsync(() -> jmriInterface.addLocomotive(locomotiveReference, address), throttleExecutor);
+	}
+
+	@Override
+	public CompletableFuture<Void> removeLocomotive(String locomotiveReference) {
+		return CompletableFuture.runAsync(() -> jmriInterface.removeLocomotive(locomotiveReference), throttleExecutor);
+	}
+
+	@Override
+	public CompletableFuture<Void> removeAllLocomotives() {
+		return CompletableFuture.runAsync(() -> jmriInterface.removeAllLocomotives(), throttleExecutor);
+	}
+
+	@Override
+	public CompletableFuture<Void> setFunctionKeyPressed(String locomotiveReference, int functionKeyNumber, boolean pressed) {
+		return CompletableFuture.runAsync(() -> jmriInterface.setFunctionKeyPressed(locomotiveReference, functionKeyNumber, pressed), throttleExecutor);
+	}
+
+	@Override
+	public CompletableFuture<Void> setFunctionKeyLocking(String locomotiveReference, int functionKeyNumber, boolean locking) {
+		return CompletableFuture.runAsync(() -> jmriInterface.setFunctionKeyLocking(locomotiveReference, functionKeyNumber, locking), throttleExecutor);
+	}
+
+	@Override
+	public CompletableFuture<Void> setMovingDirection(String locomotiveReference, MovingDirection movingDirection) {
+		return CompletableFuture.runAsync(() -> jmriInterface.setMovingDirection(locomotiveReference, movingDirection), throttleExecutor);
+	}
+
+	@Override
+	public CompletableFuture<Void> setSpeed(String locomotiveReference, int speed) {
+		return CompletableFuture.runAsync(() -> jmriInterface.setSpeed(locomotiveReference, speed), throttleExecutor);
+	}
+
+	@Override
+	public CompletableFuture<MovingDirection> getMovingDirection(String locomotiveReference) {
+		return CompletableFuture.supplyAsync(() -> jmriInterface.getMovingDirection(locomotiveReference), throttleExecutor);
+	}
+
+	@Override
+	public CompletableFuture<Void> invertMovingDirection(String locomotiveReference) {
+		return CompletableFuture.runAsync(() -> jmriInterface.invertMovingDirection(locomotiveReference), throttleExecutor);
+	}
+
+	@Override
+	public CompletableFuture<Integer> getSpeed(String locomotiveReference) {
+		return CompletableFuture.supplyAsync(() -> jmriInterface.getSpeed(locomotiveReference), throttleExecutor);
+	}
+
+	@Override
+	public CompletableFuture<Void> doEmergencyStop(String locomotiveReference) {
+		return CompletableFuture.runAsync(() -> jmriInterface.doEmergencyStop(locomotiveReference), throttleExecutor);
+	}
+
+}
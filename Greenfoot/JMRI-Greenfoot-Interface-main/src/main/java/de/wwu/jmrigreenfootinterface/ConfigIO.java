@@ -99,6 +99,16 @@ public class ConfigIO {
 		return configJsonObject.get(key);
 	}
 	
+	/**
+	 * Returns the value that is stored for the given key in the configuration, if
+	 * there is one. Use this method for optional parts of the configuration.
+	 * @param key The key
+	 * @return The value that is stored for the given key in the configuration; null if there is none
+	 */
+	public Object opt(String key) {
+		return configJsonObject.opt(key);
+	}
+	
 	/**
 	 * Stores the given object under the given key in the configuration.
 	 * @param key The key
@@ -0,0 +1,156 @@
+package de.wwu.jmrigreenfootinterface;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.wwu.jmrigreenfootinterface.net.JsonPushClient;
+
+/**
+ * A read-through cache for items and lists of items requested from the JMRI
+ * WebServer. How long a cached response is considered fresh is configured per
+ * type, e.g. a few hundred milliseconds for turnouts and a minute for roster
+ * entries. Types without such a freshness budget are not cached at all. The
+ * number of cached responses is bounded; the least recently used ones are
+ * evicted first.
+ */
+class ItemCache {
+
+	/**
+	 * A cached response and the point in time until which it is fresh
+	 */
+	private static class CachedResponse {
+		private final Object value;
+		private final long expiresAt;
+
+		private CachedResponse(Object value, long expiresAt) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	/**
+	 * The freshness budget in milliseconds of every cached (singular) type
+	 */
+	private final Map<String, Long> ttlMsByType = new HashMap<>();
+	private final LinkedHashMap<String, CachedResponse> entries;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Creates an empty cache.
+	 * 
+	 * @param maxEntries The maximum number of cached responses
+	 * @param ttlMsByType The freshness budget in milliseconds by type, e.g.
+	 *                    turnout -> 250
+	 */
+	ItemCache(int maxEntries, Map<String, Long> ttlMsByType) {
+		for (Map.Entry<String, Long> ttl : ttlMsByType.entrySet()) {
+			this.ttlMsByType.put(JsonPushClient.canonicalType(ttl.getKey()), ttl.getValue());
+		}
+		// access-ordered, so that the least recently used entry is evicted first
+		this.entries = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cached response for the given item or list, if it is still
+	 * fresh. The response is shared by all callers and must not be modified.
+	 * 
+	 * @param type     The type of the item(s)
+	 * @param itemName The name of the item; null for the list of all items of the
+	 *                 type
+	 * @return The cached response; null if there is no fresh one
+	 */
+	Object get(String type, String itemName) {
+		if (!isCached(type)) {
+			return null;
+		}
+		CachedResponse entry;
+		synchronized (entries) {
+			entry = entries.get(key(type, itemName));
+		}
+		if (entry == null || entry.expiresAt < System.currentTimeMillis()) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return entry.value;
+	}
+
+	/**
+	 * Caches the given response for the given item or list, if the type is cached
+	 * at all.
+	 * 
+	 * @param type     The type of the item(s)
+	 * @param itemName The name of the item; null for the list of all items of the
+	 *                 type
+	 * @param value    The response
+	 */
+	void put(String type, String itemName, Object value) {
+		if (!isCached(type) || value == null) {
+			return;
+		}
+		long expiresAt = System.currentTimeMillis() + ttlMsByType.get(JsonPushClient.canonicalType(type));
+		synchronized (entries) {
+			entries.put(key(type, itemName), new CachedResponse(value, expiresAt));
+		}
+	}
+
+	/**
+	 * Removes the cached response for the given item as well as the cached list
+	 * of all items of its type, e.g. after a property of the item has been
+	 * written.
+	 * 
+	 * @param type     The type of the item
+	 * @param itemName The name of the item
+	 */
+	void invalidate(String type, String itemName) {
+		synchronized (entries) {
+			entries.remove(key(type, itemName));
+			entries.remove(key(type, null));
+		}
+	}
+
+	/**
+	 * @return The number of requests answered from the cache
+	 */
+	long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return The number of requests of cached types that had to be sent, because
+	 *         there was no fresh response in the cache
+	 */
+	long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * @param type The type
+	 * @return true if responses of the given type are cached
+	 */
+	private boolean isCached(String type) {
+		Long ttl = ttlMsByType.get(JsonPushClient.canonicalType(type));
+		return ttl != null && ttl > 0;
+	}
+
+	/**
+	 * @param type     The type of the item(s)
+	 * @param itemName The name of the item; null for the list
+	 * @return The key under which the response is cached
+	 */
+	private static String key(String type, String itemName) {
+		return JsonPushClient.canonicalType(type) + "/" + (itemName == null ? "" : itemName);
+	}
+
+}
@@ -19,6 +19,11 @@ public class JMRI {
 	 */
 	private static JMRIInterface jmriInterface;
 	
+	/**
+	 * The instance of the implementation of the asynchronous interface.
+	 */
+	private static AsyncJMRIInterface asyncJmriInterface;
+	
 	/**
 	 * Allows access to an instance of the implementation of the interface. Use this
 	 * method to access all kinds of functionality that JMRI offers.
@@ -32,4 +37,18 @@ public class JMRI {
 		return jmriInterface;
 	}
 	
+	/**
+	 * Allows access to an instance of the implementation of the asynchronous
+	 * interface. It offers the same functionality as the interface returned by
+	 * getInterface(), but does not block the caller.
+	 * 
+	 * @return an instance of the implementation of the asynchronous interface
+	 */
+	public static AsyncJMRIInterface getAsyncInterface() {
+		if(asyncJmriInterface == null) {
+			asyncJmriInterface = new AsyncJMRIInterfaceImplementation(getInterface());
+		}
+		return asyncJmriInterface;
+	}
+	
 }
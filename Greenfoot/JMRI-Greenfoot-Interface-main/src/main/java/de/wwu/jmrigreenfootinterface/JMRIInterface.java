@@ -1,9 +1,22 @@
 package de.wwu.jmrigreenfootinterface;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import de.wwu.jmrigreenfootinterface.items.LayoutBlock;
+import de.wwu.jmrigreenfootinterface.items.LocomotiveState;
 import de.wwu.jmrigreenfootinterface.items.MovingDirection;
+import de.wwu.jmrigreenfootinterface.items.Reporter;
+import de.wwu.jmrigreenfootinterface.items.RosterEntry;
+import de.wwu.jmrigreenfootinterface.items.TurnoutItem;
+import de.wwu.jmrigreenfootinterface.occupancy.OccupancyListener;
+import de.wwu.jmrigreenfootinterface.occupancy.PositionEstimate;
+import de.wwu.jmrigreenfootinterface.occupancy.Transition;
 
 /**
  * The interface to access JMRI functionality. The actual realisation of
@@ -29,7 +42,8 @@ public interface JMRIInterface {
 
 	/**
 	 * Returns a list of entities of the given type as a JSONArray that are created
-	 * in JMRI, e.g. the specific turnouts created.
+	 * in JMRI, e.g. the specific turnouts created. Each call returns a new list,
+	 * which the caller may modify.
 	 * 
 	 * @param type The given type of the entities
 	 * @returna A List of entities of the given type as a JSONArray
@@ -38,6 +52,7 @@ public interface JMRIInterface {
 
 	/**
 	 * Returns the entity of the given type with the given name as JSONObject.
+	 * Each call returns a new object, which the caller may modify.
 	 * 
 	 * @param type     The given type of the entity
 	 * @param itemName The given name of the entity
@@ -69,6 +84,35 @@ public interface JMRIInterface {
 	 */
 	public boolean setProperty(String type, String itemName, String propertyName, Object value);
 
+	/**
+	 * Sets the value of the given attribute of the entity of the given type with
+	 * the given name without waiting for JMRI. The method returns immediately,
+	 * the value is sent in the background. Whether the property has actually
+	 * taken the value is confirmed later, either by JMRI's response, by a pushed
+	 * update of the entity or by a later query.
+	 * 
+	 * @param type         The given type of the entity
+	 * @param itemName     The given name of the entity
+	 * @param propertyName The given name of the entitiy's property
+	 * @param value        The value that the property should have
+	 * @return A future completed with true once the property has been confirmed
+	 *         to have taken the given value; completed with false if this could
+	 *         not be confirmed
+	 */
+	public CompletableFuture<Boolean> setPropertyDeferred(String type, String itemName, String propertyName, Object value);
+
+	/**
+	 * Sets the values of several properties of several entities at once, e.g. all
+	 * turnouts of a route. The writes are dispatched concurrently instead of one
+	 * after the other. The call returns when all of them are confirmed or could
+	 * not be confirmed.
+	 * 
+	 * @param writes The writes to perform
+	 * @return For every write, in the same order: true if the property has
+	 *         actually taken the given value; false otherwise
+	 */
+	public List<Boolean> setProperties(List<PropertyWrite> writes);
+
 	/**
 	 * Attempts to identify the train that is currently on the given layout block.
 	 * If this fails, for example because there currently is no train on that block
@@ -79,6 +123,157 @@ public interface JMRIInterface {
 	 *         null if no such train can be identified.
 	 */
 	public JSONObject getTrainOnLayoutBlock(String layoutBlockName);
+
+	/**
+	 * Determines whether the given layout block is occupied, either because a
+	 * train has been identified on it by a reporter or because JMRI senses it as
+	 * occupied. This method does not contact JMRI; it only reads the occupation
+	 * collected so far, which takes constant time.
+	 * 
+	 * @param layoutBlockName The name of the layout block
+	 * @return true if the layout block is occupied; false if it is not or if its
+	 *         state is not known
+	 */
+	public boolean isBlockOccupied(String layoutBlockName);
+
+	/**
+	 * Returns the layout blocks on which the given train has been identified.
+	 * This method does not contact JMRI; it only reads the occupation information
+	 * collected so far.
+	 * 
+	 * @param trainName The name of the train, as in its roster entry
+	 * @return The names of the layout blocks occupied by the train; empty if the
+	 *         train has not been identified on any block
+	 */
+	public Set<String> getLayoutBlocksOfTrain(String trainName);
+
+	/**
+	 * Registers a listener to be informed whenever a train enters, exits or moves
+	 * between layout blocks. This way, the occupation does not need to be queried
+	 * block by block repeatedly. The listener is informed right away about every
+	 * train already located, as if it had just entered its layout blocks.
+	 * 
+	 * @param listener The listener
+	 */
+	public void addOccupancyListener(OccupancyListener listener);
+
+	/**
+	 * Deregisters a listener registered by addOccupancyListener.
+	 * 
+	 * @param listener The listener
+	 */
+	public void removeOccupancyListener(OccupancyListener listener);
+
+	/**
+	 * Returns the transitions of trains between layout blocks recorded in the
+	 * given period of time. Only a limited number of the most recent transitions
+	 * is kept. This method does not contact JMRI.
+	 * 
+	 * @param from The beginning of the period in milliseconds (inclusive)
+	 * @param to   The end of the period in milliseconds (inclusive)
+	 * @return The transitions in chronological order
+	 */
+	public List<Transition> getOccupancyHistory(long from, long to);
+
+	/**
+	 * Returns the latest recorded transitions of the given train between layout
+	 * blocks. This method does not contact JMRI.
+	 * 
+	 * @param trainName The name of the train, as in its roster entry
+	 * @param count     The maximum number of transitions to return
+	 * @return The transitions in chronological order; empty if the train is not
+	 *         known
+	 */
+	public List<Transition> getLastTransitionsOfTrain(String trainName, int count);
+
+	/**
+	 * Estimates the position of the given train within the layout block it has
+	 * entered last, based on the time it took to pass the block before and the
+	 * block lengths configured in the occupancy section of the configuration.
+	 * This method does not contact JMRI. While a train is expected to enter its
+	 * next block, the reporters are polled at the minimum interval; still, the
+	 * entry of a train into a block may be noticed up to that interval late,
+	 * unless the reporters are pushed by JMRI.
+	 * 
+	 * @param trainName The name of the train, as in its roster entry
+	 * @return The estimated position and speed; null if the train is not located
+	 *         or its speed is not known yet
+	 */
+	public PositionEstimate getEstimatedPosition(String trainName);
+
+	/**
+	 * Estimates the time until the given train reaches the next layout block,
+	 * assuming it keeps the speed it had in the block before. This method does
+	 * not contact JMRI. Like getEstimatedPosition, the estimate is delayed by
+	 * up to one poll interval if the reporters are not pushed by JMRI.
+	 * 
+	 * @param trainName The name of the train, as in its roster entry
+	 * @return The estimated time in milliseconds; 0 if the train is overdue; -1 if
+	 *         no estimate is possible
+	 */
+	public long getEta(String trainName);
+
+	/**
+	 * Starts or resumes tracking which train occupies which layout block. The
+	 * reporters are polled in the background until the tracking is paused or
+	 * stopped. If the tracking has never been started, paused or stopped, it is
+	 * started implicitly as soon as the occupation is queried.
+	 */
+	public void startOccupancyTracking();
+
+	/**
+	 * Pauses tracking which train occupies which layout block. The reporters are
+	 * no longer polled, but the occupation collected so far is kept until the
+	 * tracking is resumed by startOccupancyTracking.
+	 */
+	public void pauseOccupancyTracking();
+
+	/**
+	 * Stops tracking which train occupies which layout block. The reporters are no
+	 * longer polled and the occupation collected so far is discarded, i.e. all
+	 * trains are reported as having exited their layout blocks.
+	 */
+	public void stopOccupancyTracking();
+	
+	// JMRI json functions returning decoded items
+
+	/**
+	 * Returns all reporters created in JMRI, decoded once from the response.
+	 * 
+	 * @return The reporters; null if they cannot be requested
+	 */
+	public List<Reporter> getReporters();
+
+	/**
+	 * Returns the layout block with the given name, decoded once from the response.
+	 * 
+	 * @param layoutBlockName The name of the layout block
+	 * @return The layout block; null if it cannot be requested
+	 */
+	public LayoutBlock getLayoutBlock(String layoutBlockName);
+
+	/**
+	 * Returns the turnout with the given name, decoded once from the response.
+	 * 
+	 * @param turnoutName The name of the turnout
+	 * @return The turnout; null if it cannot be requested
+	 */
+	public TurnoutItem getTurnout(String turnoutName);
+
+	/**
+	 * Returns all entries of the roster, decoded once from the response.
+	 * 
+	 * @return The roster entries; null if they cannot be requested
+	 */
+	public List<RosterEntry> getRosterEntries();
+
+	/**
+	 * Returns the roster entry with the given name, decoded once from the response.
+	 * 
+	 * @param trainName The name of the train
+	 * @return The roster entry; null if it cannot be requested
+	 */
+	public RosterEntry getRosterEntry(String trainName);
 	
 	// JMRI WiThrottle functions
 
@@ -157,11 +352,14 @@ public interface JMRIInterface {
 	public void setSpeed(String locomotiveReference, int speed);
 
 	/**
-	 * Returns the current driving direction of the locomotive.
+	 * Returns the current driving direction of the locomotive. The direction last
+	 * reported by the server or set by this client is returned right away; the
+	 * server is only asked if no direction is known yet.
 	 * 
 	 * @param locomotiveReference The identifier of the locomotive to be controlled
 	 *                            (reference)
-	 * @return The current driving direction of the locomotive
+	 * @return The current driving direction of the locomotive; null if the server
+	 *         has not answered and no direction has been received before
 	 */
 	public MovingDirection getMovingDirection(String locomotiveReference);
 
@@ -174,14 +372,29 @@ public interface JMRIInterface {
 	public void invertMovingDirection(String locomotiveReference);
 
 	/**
-	 * Returns the current speed of the locomotive.
+	 * Returns the current speed of the locomotive. The speed last reported by the
+	 * server or set by this client is returned right away; the server is only
+	 * asked if no speed is known yet.
 	 * 
 	 * @param locomotiveReference The identifier of the locomotive to be controlled
 	 *                            (reference)
-	 * @return The current speed of the locomotive
+	 * @return The current speed of the locomotive; -1 if the server has not
+	 *         answered and no speed has been received before
 	 */
 	public int getSpeed(String locomotiveReference);
 
+	/**
+	 * Returns the state of the locomotive as last reported by the server or set by
+	 * this client, i.e. its speed, direction of travel, function states and speed
+	 * step mode. The server is not contacted.
+	 * 
+	 * @param locomotiveReference The identifier of the locomotive to be controlled
+	 *                            (reference)
+	 * @return The state of the locomotive; LocomotiveState.UNKNOWN if nothing has
+	 *         been received about it yet
+	 */
+	public LocomotiveState getLocomotiveState(String locomotiveReference);
+
 	/**
 	 * Performs an emergency braking of the locomotive.
 	 * 
@@ -189,5 +402,17 @@ public interface JMRIInterface {
 	 *                            (reference)
 	 */
 	public void doEmergencyStop(String locomotiveReference);
+	
+	// Diagnostics
+	
+	/**
+	 * Returns counters describing the communication with JMRI so far, e.g. the
+	 * number of requests sent to the WebServer, as well as values describing its
+	 * current state, e.g. the interval between two polls of the reporters. The
+	 * values are identified by their names.
+	 * 
+	 * @return The current value of every counter by its name
+	 */
+	public Map<String, Long> getStatistics();
 
 }
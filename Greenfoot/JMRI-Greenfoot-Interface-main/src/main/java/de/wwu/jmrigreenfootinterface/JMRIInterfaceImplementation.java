@@ -1,15 +1,48 @@
 package de.wwu.jmrigreenfootinterface;
 
 import java.io.IOException;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
 
+import de.wwu.jmrigreenfootinterface.items.LayoutBlock;
+import de.wwu.jmrigreenfootinterface.items.LocomotiveState;
 import de.wwu.jmrigreenfootinterface.items.MovingDirection;
 import de.wwu.jmrigreenfootinterface.items.OccupationState;
+import de.wwu.jmrigreenfootinterface.items.Reporter;
+import de.wwu.jmrigreenfootinterface.items.RosterEntry;
+import de.wwu.jmrigreenfootinterface.items.TurnoutItem;
+import de.wwu.jmrigreenfootinterface.net.JsonPushClient;
+import de.wwu.jmrigreenfootinterface.net.ThrottleStateMirror;
+import de.wwu.jmrigreenfootinterface.occupancy.BlockRegistry;
+import de.wwu.jmrigreenfootinterface.occupancy.OccupancyHistory;
+import de.wwu.jmrigreenfootinterface.occupancy.OccupancyIndex;
+import de.wwu.jmrigreenfootinterface.occupancy.OccupancyListener;
+import de.wwu.jmrigreenfootinterface.occupancy.OccupancyTable;
+import de.wwu.jmrigreenfootinterface.occupancy.PollScheduler;
+import de.wwu.jmrigreenfootinterface.occupancy.PositionEstimate;
+import de.wwu.jmrigreenfootinterface.occupancy.ReportParser;
+import de.wwu.jmrigreenfootinterface.occupancy.ReporterBlockMap;
+import de.wwu.jmrigreenfootinterface.occupancy.RosterIndex;
+import de.wwu.jmrigreenfootinterface.occupancy.TrainEstimator;
+import de.wwu.jmrigreenfootinterface.occupancy.Transition;
 import de.wwu.jmrigreenfootinterface.net.WebSocketClient;
 import de.wwu.jmrigreenfootinterface.net.WiThrottleClient;
 
@@ -22,22 +55,109 @@ public class JMRIInterfaceImplementation implements JMRIInterface {
 
 	public static String WEBSERVER_HOST;
 	public static String WEBSERVER_PORT;
+	public static boolean WEBSERVER_PUSH;
+	public static int WEBSERVER_CONNECT_TIMEOUT_MS;
+	public static int WEBSERVER_READ_TIMEOUT_MS;
+	public static int WEBSERVER_MAX_CONNECTIONS;
+	public static int WEBSERVER_IDLE_TIMEOUT_S;
 	
 	public static String WITHROTTLESERVER_HOST;
 	public static String WITHROTTLESERVER_PORT;
+	public static long WITHROTTLESERVER_QUERY_TIMEOUT_MS;
+	public static int WITHROTTLESERVER_QUEUE_CAPACITY;
 	
 	private WebSocketClient webClient;
+	private JsonPushClient pushClient;
 	private WiThrottleClient throttleClient;
+	private final ThrottleStateMirror throttleStateMirror = new ThrottleStateMirror();
+	private ItemCache itemCache;
+	
+	/**
+	 * Runs background work, e.g. deferred writes and their confirmation
+	 */
+	private ScheduledExecutorService backgroundExecutor;
+	
+	/**
+	 * The types whose items are subscribed to via the push client
+	 */
+	private static final String[] PUSHED_TYPES = { "turnout", "layoutBlock", "reporter" };
+	/**
+	 * The time between two attempts to reconnect the push client
+	 */
+	private static final long PUSH_RECONNECT_INTERVAL_MS = 30000;
 	
 	/**
 	 * Initialisation of one client for each of the JMRI WebServer and the JMRI
 	 * WiThrottleServer in order to be able to exchange data with them later.
+	 * If enabled in the configuration, the JSON WebSocket of the JMRI WebServer
+	 * is connected as well, so that turnouts, layout blocks and reporters are
+	 * pushed instead of being polled.
 	 */
 	public JMRIInterfaceImplementation() {
 		loadNetworkConfig();
+		itemCache = loadCacheConfig();
+		pollScheduler = loadPollScheduler();
+		occupancyIndex = loadOccupancyIndex();
+		releaseBlocksOnExit = getOccupancyConfig().optBoolean("releaseOnExit", false);
+		occupancyHistory = loadOccupancyHistory();
+		occupancyTable = createOccupancyTable();
+		trainEstimator = TrainEstimator.fromConfig(getOccupancyConfig());
+		occupancyIndex.addListener(trainEstimator);
+		// one thread per pooled connection, so that writes can be dispatched concurrently
+		backgroundExecutor = Executors.newScheduledThreadPool(WEBSERVER_MAX_CONNECTIONS, r -> {
+			Thread thread = new Thread(r, "JMRI background");
+			thread.setDaemon(true);
+			return thread;
+		});
 		
-		webClient = new WebSocketClient(WEBSERVER_HOST, WEBSERVER_PORT);
-		throttleClient = new WiThrottleClient(WITHROTTLESERVER_HOST, WITHROTTLESERVER_PORT);
+		webClient = new WebSocketClient(WEBSERVER_HOST, WEBSERVER_PORT, WEBSERVER_CONNECT_TIMEOUT_MS,
+				WEBSERVER_READ_TIMEOUT_MS, WEBSERVER_MAX_CONNECTIONS, WEBSERVER_IDLE_TIMEOUT_S);
+		throttleClient = new WiThrottleClient(WITHROTTLESERVER_HOST, WITHROTTLESERVER_PORT, WITHROTTLESERVER_QUEUE_CAPACITY);
+		throttleClient.addListener(throttleStateMirror);
+		
+		if(WEBSERVER_PUSH) {
+			pushClient = new JsonPushClient(WEBSERVER_HOST, WEBSERVER_PORT);
+			pushClient.addListener((type, item) -> {
+				confirmDeferredWrites(type, item);
+				if(type.equals("layoutBlock")) {
+					updateSensedOccupancy(item);
+				}
+				// poll the reporters right away on changed reports
+				if(type.equals("reporter")) {
+					wakeUpReporterPoll();
+				}
+			});
+			connectPushClient();
+			// try to reconnect the push client from time to time
+			backgroundExecutor.scheduleWithFixedDelay(() -> {
+				if(!pushClient.isConnected()) {
+					connectPushClient();
+				}
+			}, PUSH_RECONNECT_INTERVAL_MS, PUSH_RECONNECT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	/**
+	 * (Re-)connects the push client and subscribes to all items of the pushed
+	 * types. If this fails, the items are requested via HTTP until the next
+	 * attempt succeeds.
+	 */
+	private void connectPushClient() {
+		try {
+			pushClient.connect();
+			for(String type : PUSHED_TYPES) {
+				pushClient.subscribeAll(type);
+			}
+		} catch (IOException e) {
+			System.err.println("Connecting to JMRI JSON WebSocket failed, falling back to HTTP: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * @return true if the push client is connected and its items can be used
+	 */
+	private boolean isPushConnected() {
+		return pushClient != null && pushClient.isConnected();
 	}
 	
 	/**
@@ -51,23 +171,139 @@ public class JMRIInterfaceImplementation implements JMRIInterface {
 		
 		WEBSERVER_HOST = webserverConfig.getString("host");
 		WEBSERVER_PORT = webserverConfig.getString("port");
+		WEBSERVER_PUSH = webserverConfig.optBoolean("push", false);
+		WEBSERVER_CONNECT_TIMEOUT_MS = webserverConfig.optInt("connectTimeoutMs", WebSocketClient.DEFAULT_CONNECT_TIMEOUT_MS);
+		WEBSERVER_READ_TIMEOUT_MS = webserverConfig.optInt("readTimeoutMs", WebSocketClient.DEFAULT_READ_TIMEOUT_MS);
+		WEBSERVER_MAX_CONNECTIONS = webserverConfig.optInt("maxConnections", WebSocketClient.DEFAULT_MAX_CONNECTIONS);
+		WEBSERVER_IDLE_TIMEOUT_S = webserverConfig.optInt("idleTimeoutSeconds", WebSocketClient.DEFAULT_IDLE_TIMEOUT_S);
 		WITHROTTLESERVER_HOST = withrottleConfig.getString("host");
 		WITHROTTLESERVER_PORT = withrottleConfig.getString("port");
+		WITHROTTLESERVER_QUERY_TIMEOUT_MS = withrottleConfig.optLong("queryTimeoutMs", 500);
+		WITHROTTLESERVER_QUEUE_CAPACITY = withrottleConfig.optInt("queueCapacity", WiThrottleClient.DEFAULT_QUEUE_CAPACITY);
 		
 		System.out.println("WebServer config is " + WEBSERVER_HOST + ":" + WEBSERVER_PORT);
 		System.out.println("WiThrottle server config is " + WITHROTTLESERVER_HOST + ":" + WITHROTTLESERVER_PORT);
 	}
 	
+	/**
+	 * Creates the cache of requested items as configured in the JSON
+	 * configuration file. If the configuration does not contain a cache section,
+	 * turnouts and layout blocks are considered fresh for 250 ms and roster
+	 * entries for 60 s.
+	 * 
+	 * @return The configured cache
+	 */
+	private ItemCache loadCacheConfig() {
+		JSONObject cacheConfig = (JSONObject) ConfigIO.getInstance().opt("cache");
+		if(cacheConfig == null) {
+			cacheConfig = new JSONObject();
+		}
+		JSONObject ttlConfig = cacheConfig.optJSONObject("ttlMs");
+		if(ttlConfig == null) {
+			ttlConfig = new JSONObject().put("turnout", 250).put("layoutBlock", 250).put("rosterEntry", 60000);
+		}
+		
+		Map<String, Long> ttlMsByType = new HashMap<>();
+		for(String type : ttlConfig.keySet()) {
+			ttlMsByType.put(type, ttlConfig.getLong(type));
+		}
+		return new ItemCache(cacheConfig.optInt("maxEntries", 256), ttlMsByType);
+	}
+	
+	/**
+	 * @return The occupancy section of the JSON configuration file; an empty
+	 *         object if there is none
+	 */
+	private JSONObject getOccupancyConfig() {
+		JSONObject occupancyConfig = (JSONObject) ConfigIO.getInstance().opt("occupancy");
+		return occupancyConfig == null ? new JSONObject() : occupancyConfig;
+	}
+	
+	/**
+	 * Creates the scheduler of reporter polls as configured in the occupancy
+	 * section of the JSON configuration file. If no intervals are configured
+	 * there, reporters are polled every 200 ms while reports are changing and
+	 * at least every 3.2 s otherwise.
+	 * 
+	 * @return The configured scheduler
+	 */
+	private PollScheduler loadPollScheduler() {
+		JSONObject occupancyConfig = getOccupancyConfig();
+		return new PollScheduler(occupancyConfig.optLong("minPollMs", 200), occupancyConfig.optLong("maxPollMs", 3200));
+	}
+	
+	/**
+	 * Creates the index of occupied layout blocks according to the policy
+	 * configured in the occupancy section of the JSON configuration file:
+	 * maxBlocksPerTrain is the number of blocks a (long) train may hold at the
+	 * same time, regardless of whether they are adjacent. By default, a train
+	 * holds a single block until it is reported in another one.
+	 * 
+	 * @return The empty index
+	 */
+	private OccupancyIndex loadOccupancyIndex() {
+		return new OccupancyIndex(getOccupancyConfig().optInt("maxBlocksPerTrain", 1));
+	}
+	
+	/**
+	 * Creates the history of transitions between layout blocks with the capacity
+	 * configured in the occupancy section of the JSON configuration file (4096
+	 * transitions by default) and feeds it with every change of the occupation.
+	 * 
+	 * @return The empty history
+	 */
+	private OccupancyHistory loadOccupancyHistory() {
+		int capacity = getOccupancyConfig().optInt("historyCapacity", 4096);
+		OccupancyHistory history = new OccupancyHistory(capacity, blockRegistry);
+		occupancyIndex.addListener(new OccupancyListener() {
+			@Override
+			public void trainEntered(String blockName, String trainName) {
+				history.record(System.currentTimeMillis(), getAddressOfTrain(trainName), blockName, Transition.Kind.ENTERED);
+			}
+			
+			@Override
+			public void trainExited(String blockName, String trainName) {
+				history.record(System.currentTimeMillis(), getAddressOfTrain(trainName), blockName, Transition.Kind.EXITED);
+			}
+		});
+		return history;
+	}
+	
+	/**
+	 * Creates the table of occupied layout blocks and feeds it with every change
+	 * of the trains identified by reporters. The state of the layout blocks sensed
+	 * by JMRI is fed by the reporter polls and by pushed layout blocks.
+	 * 
+	 * @return The empty table
+	 */
+	private OccupancyTable createOccupancyTable() {
+		OccupancyTable table = new OccupancyTable(blockRegistry);
+		occupancyIndex.addListener(new OccupancyListener() {
+			@Override
+			public void trainEntered(String blockName, String trainName) {
+				table.setReported(blockName, true);
+			}
+			
+			@Override
+			public void trainExited(String blockName, String trainName) {
+				// another train may have entered the block at the same time
+				table.setReported(blockName, occupancyIndex.getTrain(blockName) != null);
+			}
+		});
+		return table;
+	}
+	
 	// ============ JMRI json functions section ============
 	
 	@Override
 	public JSONArray listTypes() {
 		try {
-			String response = webClient.doRequest("GET", "type", "");
-			if(response != null) {
-				return new JSONArray(response);
+			Object response = webClient.doJsonRequest("GET", "type", "");
+			if(response instanceof JSONArray) {
+				// the response may be shared with concurrent callers
+				return new JSONArray(response.toString());
 			}
-		} catch (JSONException | IOException e) {
+		} catch (IOException e) {
 			e.printStackTrace();
 		}
 		return null;
@@ -75,12 +311,40 @@ public class JMRIInterfaceImplementation implements JMRIInterface {
 
 	@Override
 	public JSONArray getType(String type) {
+		JSONArray items = getSharedType(type);
+		return items == null ? null : new JSONArray(items.toString());
+	}
+	
+	/**
+	 * Returns the list of all items of the given type like getType, but without
+	 * copying it. The list may be the one cached or pushed, so it must only be
+	 * read, never modified.
+	 * 
+	 * @param type The type of the items
+	 * @return The list of the items; null if it could not be requested
+	 */
+	private JSONArray getSharedType(String type) {
+		// use the pushed items, if the complete list of that type is known
+		if(isPushConnected()) {
+			Collection<JSONObject> pushedItems = pushClient.getLatestOfType(type);
+			if(pushedItems != null) {
+				return new JSONArray(pushedItems);
+			}
+		}
+		
+		// use the cached list, if it is still fresh
+		Object cachedItems = itemCache.get(type, null);
+		if(cachedItems instanceof JSONArray) {
+			return (JSONArray) cachedItems;
+		}
+		
 		try {
-			String response = webClient.doRequest("GET", type, "");
-			if(response != null) {
-				return new JSONArray(response);
+			Object response = webClient.doJsonRequest("GET", type, "");
+			if(response instanceof JSONArray) {
+				itemCache.put(type, null, response);
+				return (JSONArray) response;
 			}
-		} catch (JSONException | IOException e) {
+		} catch (IOException e) {
 			e.printStackTrace();
 		}
 		return null;
@@ -88,12 +352,40 @@ public class JMRIInterfaceImplementation implements JMRIInterface {
 
 	@Override
 	public JSONObject getItem(String type, String itemName) {
+		JSONObject item = getSharedItem(type, itemName);
+		return item == null ? null : new JSONObject(item.toString());
+	}
+	
+	/**
+	 * Returns an item like getItem, but without copying it. The item may be the
+	 * one cached or pushed, so it must only be read, never modified.
+	 * 
+	 * @param type     The type of the item
+	 * @param itemName The name of the item
+	 * @return The item; null if it could not be requested
+	 */
+	private JSONObject getSharedItem(String type, String itemName) {
+		// use the pushed item, if it is known
+		if(isPushConnected()) {
+			JSONObject pushedItem = pushClient.getLatest(type, itemName);
+			if(pushedItem != null) {
+				return pushedItem;
+			}
+		}
+		
+		// use the cached item, if it is still fresh
+		Object cachedItem = itemCache.get(type, itemName);
+		if(cachedItem instanceof JSONObject) {
+			return (JSONObject) cachedItem;
+		}
+		
 		try {
-			String response = webClient.doRequest("GET", type + "/" + itemName, "");
-			if(response != null) {
-				return new JSONObject(response);
+			Object response = webClient.doJsonRequest("GET", type + "/" + itemName, "");
+			if(response instanceof JSONObject) {
+				itemCache.put(type, itemName, response);
+				return (JSONObject) response;
 			}
-		} catch (JSONException | IOException e) {
+		} catch (IOException e) {
 			e.printStackTrace();
 		}
 		return null;
@@ -101,15 +393,22 @@ public class JMRIInterfaceImplementation implements JMRIInterface {
 
 	@Override
 	public Object getProperty(String type, String itemName, String propertyName) {
-		JSONObject item = getItem(type, itemName);
+		JSONObject item = getSharedItem(type, itemName);
 		JSONObject itemData = item.getJSONObject("data");
-		return itemData.get(propertyName);
+		// nested objects are copied, so that the shared item cannot be modified
+		Object property = itemData.get(propertyName);
+		if(property instanceof JSONObject) {
+			return new JSONObject(property.toString());
+		}
+		if(property instanceof JSONArray) {
+			return new JSONArray(property.toString());
+		}
+		return property;
 	}
 
 	private boolean setPropertyString(String type, String itemName, String propertyName, String value) {
 		try {
-			webClient.doRequest("POST", type + "/" + itemName, "{\"" + propertyName + "\":\"" + String.valueOf(value) + "\"}");
-			return getProperty(type, itemName, propertyName).equals(value);
+			return postProperty(type, itemName, propertyName, value, "{\"" + propertyName + "\":\"" + String.valueOf(value) + "\"}");
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -124,137 +423,687 @@ public class JMRIInterfaceImplementation implements JMRIInterface {
 		}
 		
 		try {
-			webClient.doRequest("POST", type + "/" + itemName, "{\"" + propertyName + "\":" + String.valueOf(value) + "}");
-			return getProperty(type, itemName, propertyName).equals(value);
+			return postProperty(type, itemName, propertyName, value, "{\"" + propertyName + "\":" + String.valueOf(value) + "}");
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 		return false;
 	}
 	
-	private Thread layoutBlockListenerThread = null;
-	private HashMap<String, String> layoutBlockOccupations = null;
+	/**
+	 * Posts a property to JMRI and checks whether it has been set. The check
+	 * uses the item JMRI responds with or, if it does not respond with the item,
+	 * the item requested from JMRI afterwards. Neither the pushed nor the cached
+	 * item is used, since they may not have been updated yet.
+	 * 
+	 * @param type         The type of the item
+	 * @param itemName     The name of the item
+	 * @param propertyName The name of the property
+	 * @param value        The value the property should have
+	 * @param body         The body of the request
+	 * @return true if the property has the given value afterwards
+	 * @throws IOException If something goes wrong
+	 */
+	private boolean postProperty(String type, String itemName, String propertyName, Object value, String body) throws IOException {
+		Object response = webClient.doJsonRequest("POST", type + "/" + itemName, body);
+		itemCache.invalidate(type, itemName);
+		if(!(response instanceof JSONObject)) {
+			response = webClient.doJsonRequest("GET", type + "/" + itemName, "");
+		}
+		return response instanceof JSONObject && hasPropertyValue((JSONObject) response, propertyName, value);
+	}
 	
 	@Override
-	public JSONObject getTrainOnLayoutBlock(String layoutBlockName) {
-
-		// initialize layout block occupation map, if necessary
-
-			if (layoutBlockOccupations == null) {
-				layoutBlockOccupations = new HashMap<>();
-			}
+	public List<Reporter> getReporters() {
+		JSONArray reporters = getSharedType("reporters");
+		if(reporters == null) {
+			return null;
+		}
+		List<Reporter> result = new ArrayList<>(reporters.length());
+		for(int i = 0; i < reporters.length(); i++) {
+			result.add(Reporter.fromJson(reporters.getJSONObject(i)));
+		}
+		return result;
+	}
 
+	@Override
+	public LayoutBlock getLayoutBlock(String layoutBlockName) {
+		JSONObject layoutBlock = getSharedItem("layoutBlocks", layoutBlockName);
+		return layoutBlock == null ? null : LayoutBlock.fromJson(layoutBlock);
+	}
 
+	@Override
+	public TurnoutItem getTurnout(String turnoutName) {
+		JSONObject turnout = getSharedItem("turnout", turnoutName);
+		return turnout == null ? null : TurnoutItem.fromJson(turnout);
+	}
 
-		// start layout block listener thread to stay informed about layout block
-		// occupation updated, if necessary
-		if (layoutBlockListenerThread == null || !layoutBlockListenerThread.isAlive()) {
-			startLayoutBlockOccupationListenerThread();
+	@Override
+	public List<RosterEntry> getRosterEntries() {
+		JSONArray rosterEntries = getSharedType("rosterEntry");
+		if(rosterEntries == null) {
+			return null;
 		}
+		List<RosterEntry> result = new ArrayList<>(rosterEntries.length());
+		for(int i = 0; i < rosterEntries.length(); i++) {
+			result.add(RosterEntry.fromJson(rosterEntries.getJSONObject(i)));
+		}
+		return result;
+	}
 
-
-			// return current occupation information, if known
-			if(!layoutBlockOccupations.containsKey(layoutBlockName)) {
-				return null;
+	@Override
+	public RosterEntry getRosterEntry(String trainName) {
+		JSONObject rosterEntry = getSharedItem("rosterEntry", trainName);
+		return rosterEntry == null ? null : RosterEntry.fromJson(rosterEntry);
+	}
+	
+	/**
+	 * The time after which a deferred write is confirmed by a query, if neither
+	 * JMRI's response nor a pushed update have confirmed it before
+	 */
+	private static final long DEFERRED_WRITE_CONFIRMATION_DELAY_MS = 1000;
+	
+	/**
+	 * A deferred write waiting for its confirmation
+	 */
+	private static class DeferredWrite {
+		private final String type, itemName, propertyName;
+		private final Object value;
+		private final CompletableFuture<Boolean> confirmation = new CompletableFuture<>();
+		
+		private DeferredWrite(String type, String itemName, String propertyName, Object value) {
+			this.type = JsonPushClient.canonicalType(type);
+			this.itemName = itemName;
+			this.propertyName = propertyName;
+			this.value = value;
+		}
+	}
+	
+	/**
+	 * The deferred writes that have been sent, but not been confirmed yet
+	 */
+	private final Queue<DeferredWrite> unconfirmedWrites = new ConcurrentLinkedQueue<>();
+	
+	@Override
+	public CompletableFuture<Boolean> setPropertyDeferred(String type, String itemName, String propertyName, Object value) {
+		DeferredWrite write = new DeferredWrite(type, itemName, propertyName, value);
+		backgroundExecutor.execute(() -> {
+			try {
+				JSONObject properties = new JSONObject().put(propertyName, value);
+				
+				if(isPushConnected()) {
+					// send via the open WebSocket and wait for the pushed update
+					awaitConfirmation(write);
+					pushClient.post(type, itemName, properties);
+					itemCache.invalidate(type, itemName);
+					return;
+				}
+				
+				Object response = webClient.doJsonRequest("POST", type + "/" + itemName, properties.toString());
+				itemCache.invalidate(type, itemName);
+				
+				// JMRI usually responds with the updated item, which confirms the write at once
+				if(response instanceof JSONObject && hasPropertyValue((JSONObject) response, propertyName, value)) {
+					write.confirmation.complete(true);
+					return;
+				}
+				awaitConfirmation(write);
+			} catch (IOException | RuntimeException e) {
+				write.confirmation.completeExceptionally(e);
 			}
-			return getItem("rosterEntry", layoutBlockOccupations.get(layoutBlockName));
-
+		});
+		return write.confirmation;
 	}
-
-
-
+	
+	@Override
+	public List<Boolean> setProperties(List<PropertyWrite> writes) {
+		// dispatch all writes at once...
+		List<CompletableFuture<Boolean>> confirmations = new ArrayList<>(writes.size());
+		for(PropertyWrite write : writes) {
+			confirmations.add(setPropertyDeferred(write.getType(), write.getItemName(), write.getPropertyName(), write.getValue()));
+		}
+		// ...and collect their confirmations afterwards
+		List<Boolean> results = new ArrayList<>(writes.size());
+		for(CompletableFuture<Boolean> confirmation : confirmations) {
+			try {
+				results.add(confirmation.get());
+			} catch (Exception e) {
+				e.printStackTrace();
+				results.add(false);
+			}
+		}
+		return results;
+	}
+	
 	/**
-	 * Starts a thread that polls the reporters of all layout blocks at short
-	 * intervals about their current state so that trains can be identified and
-	 * located on the track system.
-	 */
-	private void startLayoutBlockOccupationListenerThread() {
-		layoutBlockListenerThread = new Thread(() -> {
-			do {
-				// request layout block reporters
-				JSONArray reporters = getType("reporters");
-				// for every reporter...
-				String blockName="";
-				for(int i = 0; i < reporters.length(); i++) {
-					// request its name and report
-					if(reporters.getJSONObject(i).getJSONObject("data").getString("name").equals("IR100")){
-						 blockName="Links";
-
-					}else if(reporters.getJSONObject(i).getJSONObject("data").getString("name").equals("IR101")){
-						 blockName="Oben";
-
-					}else if(reporters.getJSONObject(i).getJSONObject("data").getString("name").equals("IR102")){
-						 blockName="Rechts";
-
-					}else if(reporters.getJSONObject(i).getJSONObject("data").getString("name").equals("IR103")){
-						 blockName="Unten";
-
-					}else{
-						 blockName="Weiche";
+	 * Waits for a pushed update confirming the given deferred write. If there is
+	 * none within a short time, the item is queried to confirm the write.
+	 * 
+	 * @param write The deferred write that has not been confirmed yet
+	 */
+	private void awaitConfirmation(DeferredWrite write) {
+		unconfirmedWrites.add(write);
+		write.confirmation.whenComplete((confirmed, e) -> unconfirmedWrites.remove(write));
+		backgroundExecutor.schedule(() -> {
+			try {
+				JSONObject item = getSharedItem(write.type, write.itemName);
+				write.confirmation.complete(item != null && hasPropertyValue(item, write.propertyName, write.value));
+			} catch (RuntimeException e) {
+				write.confirmation.completeExceptionally(e);
+			}
+		}, DEFERRED_WRITE_CONFIRMATION_DELAY_MS, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Confirms all unconfirmed deferred writes to the given pushed item, whose
+	 * values the item has taken.
+	 * 
+	 * @param type The (singular) type of the pushed item
+	 * @param item The pushed item
+	 */
+	private void confirmDeferredWrites(String type, JSONObject item) {
+		for(DeferredWrite write : unconfirmedWrites) {
+			if(write.type.equals(type) && write.itemName.equals(item.getJSONObject("data").optString("name"))
+					&& hasPropertyValue(item, write.propertyName, write.value)) {
+				write.confirmation.complete(true);
+			}
+		}
+	}
+	
+	/**
+	 * @param item         The item as JSONObject, containing its type and its data
+	 * @param propertyName The name of the property
+	 * @param value        The value
+	 * @return true if the given property of the given item has the given value
+	 */
+	private static boolean hasPropertyValue(JSONObject item, String propertyName, Object value) {
+		JSONObject data = item.optJSONObject("data");
+		return data != null && Objects.equals(data.opt(propertyName), value);
+	}
+	
+	/**
+	 * The states of the tracking of layout block occupation
+	 */
+	private enum TrackingState {
+		/** Not started yet; started implicitly when occupation is queried */
+		NEW,
+		RUNNING,
+		/** Not polling, but keeping the occupation collected so far */
+		PAUSED,
+		/** Not polling; the occupation collected so far has been discarded */
+		STOPPED
+	}
+	
+	private volatile TrackingState trackingState = TrackingState.NEW;
+	/**
+	 * The next scheduled poll of the reporters
+	 */
+	private ScheduledFuture<?> reporterPollTask = null;
+	/**
+	 * Identifies the current chain of polls; polls of earlier chains are dropped
+	 */
+	private int reporterPollGeneration = 0;
+	private boolean reporterPollRunning = false;
+	/**
+	 * Whether a changed reporter has been pushed during the running poll
+	 */
+	private boolean reporterPollRequested = false;
+	/**
+	 * Held while the reporters are polled and while the collected occupation is
+	 * discarded
+	 */
+	private final Object reporterPollLock = new Object();
+	/**
+	 * Which train occupies which layout block; written by the reporter polls,
+	 * read by any thread
+	 */
+	private OccupancyIndex occupancyIndex;
+	/**
+	 * Whether reports of trains exiting a layout block release that block, as
+	 * configured by releaseOnExit in the occupancy section (false by default)
+	 */
+	private boolean releaseBlocksOnExit;
+	/**
+	 * Assigns dense ids to the names of layout blocks
+	 */
+	private final BlockRegistry blockRegistry = new BlockRegistry();
+	/**
+	 * The most recent transitions of trains between layout blocks
+	 */
+	private OccupancyHistory occupancyHistory;
+	/**
+	 * Which layout blocks are occupied according to reporters or JMRI
+	 */
+	private OccupancyTable occupancyTable;
+	/**
+	 * Extrapolates the positions of trains from their transitions between layout
+	 * blocks
+	 */
+	private TrainEstimator trainEstimator;
+	/**
+	 * The layout block monitored by each reporter; null until it has been read
+	 * from the configuration or derived from JMRI
+	 */
+	private ReporterBlockMap reporterBlockMap = null;
+	
+	/**
+	 * The interval between two polls while the push client is connected, in
+	 * which case changed reporters trigger a poll anyway
+	 */
+	private static final long PUSHED_POLL_INTERVAL_MS = 5000;
+	/**
+	 * Adapts the interval between two polls to the activity on the layout
+	 */
+	private PollScheduler pollScheduler;
+	/**
+	 * The interval waited after the latest poll
+	 */
+	private volatile long pollIntervalMs = 0;
+	/**
+	 * The latest processed report of each reporter; cleared when the roster
+	 * index is refreshed, so that reports are processed again
+	 */
+	private final Map<String, String> lastReports = new ConcurrentHashMap<>();
+	/**
+	 * The reports to be processed again because their train has not been found
+	 * in the roster, by reporter
+	 */
+	private final Map<String, String> unresolvedReports = new ConcurrentHashMap<>();
+	/**
+	 * Parses the reports; only used while holding the reporterPollLock
+	 */
+	private final ReportParser reportParser = new ReportParser();
+	private final AtomicLong processedReportCount = new AtomicLong();
+	private final AtomicLong skippedReportCount = new AtomicLong();
+	
+	/**
+	 * The interval at which the roster index is refreshed
+	 */
+	private static final long ROSTER_REFRESH_INTERVAL_MS = 60000;
+	/**
+	 * The minimum time between two refreshes of the roster index caused by
+	 * reported addresses missing in it
+	 */
+	private static final long ROSTER_MISS_REFRESH_INTERVAL_MS = 5000;
+	/**
+	 * The roster indexed by DCC address
+	 */
+	private final RosterIndex rosterIndex = new RosterIndex();
+	private volatile boolean rosterRefreshPending = false;
+	private ScheduledFuture<?> rosterRefreshTask = null;
+	
+	/**
+	 * Refreshes the roster index in the background, unless a refresh is already
+	 * pending.
+	 */
+	private void refreshRosterIndex() {
+		if(rosterRefreshPending) {
+			return;
+		}
+		rosterRefreshPending = true;
+		backgroundExecutor.execute(() -> {
+			try {
+				List<RosterEntry> rosterEntries = getRosterEntries();
+				if(rosterEntries != null) {
+					rosterIndex.refresh(rosterEntries);
+					// reported addresses may be resolved differently now
+					lastReports.clear();
+				}
+			} finally {
+				rosterRefreshPending = false;
+			}
+		});
+	}
+	
+	/**
+	 * Reads the assignment of reporters to layout blocks from the occupancy
+	 * section of the configuration. If no reporters are configured there, the
+	 * assignment is derived from the blocks in JMRI.
+	 * 
+	 * @return The assignment; null if it can neither be read nor derived (yet)
+	 */
+	private ReporterBlockMap loadReporterBlockMap() {
+		JSONObject occupancyConfig = getOccupancyConfig();
+		ReporterBlockMap configuredMap = ReporterBlockMap.fromConfig(occupancyConfig);
+		if(configuredMap != null) {
+			return configuredMap;
+		}
+		
+		JSONArray blocks = getSharedType("blocks");
+		if(blocks == null) {
+			return null;
+		}
+		String defaultBlockName = occupancyConfig.optString("defaultBlock", null);
+		ReporterBlockMap derivedMap = ReporterBlockMap.fromBlocks(blocks, defaultBlockName);
+		System.out.println("Derived layout blocks of " + derivedMap.size() + " reporters from JMRI");
+		return derivedMap;
+	}
+	
+	@Override
+	public JSONObject getTrainOnLayoutBlock(String layoutBlockName) {
+		ensureOccupancyTracking();
 
-					}
+		// return current occupation information, if known
+		String trainName = occupancyIndex.getTrain(layoutBlockName);
+		if(trainName == null) {
+			return null;
+		}
+		return getItem("rosterEntry", trainName);
+	}
+	
+	@Override
+	public boolean isBlockOccupied(String layoutBlockName) {
+		ensureOccupancyTracking();
+		return occupancyTable.isOccupied(layoutBlockName);
+	}
+	
+	/**
+	 * Records the occupation of the given layout block as sensed by JMRI. The
+	 * block is recorded under both its system name and its user name.
+	 * 
+	 * @param item The layout block as JSONObject, containing its type and its data
+	 * @return true if the recorded occupation has changed
+	 */
+	private boolean updateSensedOccupancy(JSONObject item) {
+		LayoutBlock layoutBlock = LayoutBlock.fromJson(item);
+		boolean changed = occupancyTable.setSensed(layoutBlock.getName(), layoutBlock.isOccupied());
+		if(layoutBlock.getUserName() != null && !layoutBlock.getUserName().isEmpty()) {
+			changed |= occupancyTable.setSensed(layoutBlock.getUserName(), layoutBlock.isOccupied());
+		}
+		return changed;
+	}
+	
+	@Override
+	public Set<String> getLayoutBlocksOfTrain(String trainName) {
+		ensureOccupancyTracking();
+		return occupancyIndex.getBlocks(trainName);
+	}
+	
+	@Override
+	public void addOccupancyListener(OccupancyListener listener) {
+		occupancyIndex.addListener(listener);
+		ensureOccupancyTracking();
+	}
+	
+	@Override
+	public void removeOccupancyListener(OccupancyListener listener) {
+		occupancyIndex.removeListener(listener);
+	}
+	
+	@Override
+	public List<Transition> getOccupancyHistory(long from, long to) {
+		return occupancyHistory.getTransitions(from, to);
+	}
+	
+	@Override
+	public List<Transition> getLastTransitionsOfTrain(String trainName, int count) {
+		int address = getAddressOfTrain(trainName);
+		if(address < 0) {
+			return new ArrayList<>();
+		}
+		return occupancyHistory.getLastTransitions(address, count);
+	}
+	
+	@Override
+	public PositionEstimate getEstimatedPosition(String trainName) {
+		return trainEstimator.getEstimatedPosition(trainName);
+	}
+	
+	@Override
+	public long getEta(String trainName) {
+		return trainEstimator.getEta(trainName);
+	}
+	
+	/**
+	 * Looks up the DCC address of the given train in the roster index.
+	 * 
+	 * @param trainName The name of the train
+	 * @return The DCC address; -1 if the train is not indexed
+	 */
+	private int getAddressOfTrain(String trainName) {
+		RosterEntry rosterEntry = rosterIndex.lookupByName(trainName);
+		if(rosterEntry == null) {
+			return -1;
+		}
+		try {
+			return Integer.parseInt(rosterEntry.getAddress());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+	
+	@Override
+	public synchronized void startOccupancyTracking() {
+		if(trackingState == TrackingState.RUNNING) {
+			return;
+		}
+		trackingState = TrackingState.RUNNING;
+		pollScheduler.reset();
+		
+		// build the roster index once and keep it up to date on a slow schedule
+		rosterRefreshTask = backgroundExecutor.scheduleWithFixedDelay(this::refreshRosterIndex, 0, ROSTER_REFRESH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+		scheduleReporterPoll(0);
+	}
+	
+	@Override
+	public synchronized void pauseOccupancyTracking() {
+		if(trackingState == TrackingState.RUNNING) {
+			trackingState = TrackingState.PAUSED;
+			cancelOccupancyTasks();
+		}
+	}
+	
+	@Override
+	public void stopOccupancyTracking() {
+		synchronized (this) {
+			trackingState = TrackingState.STOPPED;
+			cancelOccupancyTasks();
+		}
+		// wait for a running poll, so that it does not record anything afterwards
+		synchronized (reporterPollLock) {
+			lastReports.clear();
+			occupancyIndex.clearAll();
+			occupancyTable.clear();
+		}
+	}
+	
+	/**
+	 * Starts tracking the layout block occupation, unless it has been started,
+	 * paused or stopped explicitly before.
+	 */
+	private void ensureOccupancyTracking() {
+		// checked without locking first, since this is called on every query
+		if(trackingState != TrackingState.NEW) {
+			return;
+		}
+		synchronized (this) {
+			if(trackingState == TrackingState.NEW) {
+				startOccupancyTracking();
+			}
+		}
+	}
+	
+	/**
+	 * Cancels the scheduled poll of the reporters and the refreshes of the
+	 * roster index. A poll already running finishes without scheduling another.
+	 */
+	private synchronized void cancelOccupancyTasks() {
+		reporterPollGeneration++;
+		if(reporterPollTask != null) {
+			reporterPollTask.cancel(false);
+			reporterPollTask = null;
+		}
+		if(rosterRefreshTask != null) {
+			rosterRefreshTask.cancel(false);
+			rosterRefreshTask = null;
+		}
+	}
+	
+	/**
+	 * Schedules the next poll of the reporters on the background executor.
+	 * 
+	 * @param delayMs The time to wait before the poll
+	 */
+	private synchronized void scheduleReporterPoll(long delayMs) {
+		int generation = ++reporterPollGeneration;
+		reporterPollTask = backgroundExecutor.schedule(() -> pollReporters(generation), delayMs, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Polls the reporters right away, e.g. because a changed reporter has been
+	 * pushed. If a poll is running at the moment, the next one follows without
+	 * delay.
+	 */
+	private synchronized void wakeUpReporterPoll() {
+		if(trackingState != TrackingState.RUNNING) {
+			return;
+		}
+		if(reporterPollRunning) {
+			reporterPollRequested = true;
+		} else {
+			if(reporterPollTask != null) {
+				reporterPollTask.cancel(false);
+			}
+			scheduleReporterPoll(0);
+		}
+	}
 
+	/**
+	 * Polls the reporters of all layout blocks about their current state so that
+	 * trains can be identified and located on the track system. Afterwards, the
+	 * next poll is scheduled; while the push client is connected, pushed reporter
+	 * changes trigger a poll as well.
+	 * 
+	 * @param generation The chain of polls this poll belongs to
+	 */
+	private void pollReporters(int generation) {
+		synchronized (this) {
+			if(generation != reporterPollGeneration || trackingState != TrackingState.RUNNING) {
+				return;
+			}
+			reporterPollRunning = true;
+			reporterPollRequested = false;
+		}
+		
+		boolean reportsChanged = false;
+		try {
+			synchronized (reporterPollLock) {
+				if(trackingState == TrackingState.RUNNING) {
+					reportsChanged = processReports();
+				}
+			}
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+		} finally {
+			synchronized (this) {
+				reporterPollRunning = false;
+				// poll less often while nothing is happening on the layout, but closely
+				// while a train is about to enter its next block, so that its speed is measured accurately
+				long interval = pollScheduler.next(reportsChanged || trainEstimator.hasTrainInMotion());
+				pollIntervalMs = isPushConnected() ? PUSHED_POLL_INTERVAL_MS : interval;
+				if(generation == reporterPollGeneration && trackingState == TrackingState.RUNNING) {
+					scheduleReporterPoll(reporterPollRequested ? 0 : pollIntervalMs);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Requests the reporters and records the trains identified by their changed
+	 * reports as occupying the layout blocks monitored by them. In addition, the
+	 * occupation of the layout blocks sensed by JMRI is recorded.
+	 * 
+	 * @return Whether any report or sensed occupation has changed since the
+	 *         previous poll
+	 */
+	private boolean processReports() {
+		// assign reporters to layout blocks, if not done yet
+		if(reporterBlockMap == null) {
+			reporterBlockMap = loadReporterBlockMap();
+		}
+		
+		// request the state of the layout blocks, which is pushed or cached, if possible
+		boolean reportsChanged = false;
+		JSONArray layoutBlocks = getSharedType("layoutBlocks");
+		if(layoutBlocks != null) {
+			for(int i = 0; i < layoutBlocks.length(); i++) {
+				reportsChanged |= updateSensedOccupancy(layoutBlocks.getJSONObject(i));
+			}
+		}
+		
+		// request layout block reporters
+		List<Reporter> reporters = getReporters();
+		if(reporters == null || reporterBlockMap == null) {
+			reporters = new ArrayList<>();
+		}
+		// for every reporter...
+		for(Reporter reporter : reporters) {
+			// look up the layout block it monitors
+			String blockName = reporterBlockMap.getBlockName(reporter.getName());
+			if(blockName == null) {
+				continue;
+			}
+			String report = reporter.getReport() == null ? "" : reporter.getReport();
+			
+			// skip the report, if it has already been processed
+			String lastReport = lastReports.put(reporter.getName(), report);
+			if(report.equals(lastReport)) {
+				skippedReportCount.incrementAndGet();
+				continue;
+			}
+			processedReportCount.incrementAndGet();
+			// retrying a report whose train was not in the roster is no change on the layout
+			if(!report.equals(unresolvedReports.remove(reporter.getName()))) {
+				reportsChanged = true;
+			}
 
+			// set occupation state depending on report
+			OccupationState state = !reportParser.parse(report) ? OccupationState.UNKNOWN : (reportParser.isExit() ? OccupationState.UNOCCUPIED : OccupationState.OCCUPIED);
 
-					//System.out.println(reporters.getJSONObject(i).getJSONObject("data").getString("name"));
-					String report = "";
-					if(!reporters.getJSONObject(i).getJSONObject("data").isNull("report")) {
-						report = reporters.getJSONObject(i).getJSONObject("data").getString("report");
+			// query train name depending on occupation state
+			if(state == OccupationState.UNOCCUPIED && releaseBlocksOnExit) {
+				// release the block, if it is held by the train that has exited
+				RosterEntry rosterEntry = rosterIndex.lookup(reportParser.getAddress());
+				if(rosterEntry == null) {
+					retryReport(reporter.getName(), report);
+				} else {
+					occupancyIndex.release(blockName, rosterEntry.getName());
+				}
+			} else if(state == OccupationState.OCCUPIED) {
+				// look up the train with the reported DCC address
+				RosterEntry rosterEntry = rosterIndex.lookup(reportParser.getAddress());
+				if(rosterEntry == null) {
+					// the roster may have changed since the index was refreshed
+					if(System.currentTimeMillis() - rosterIndex.getLastRefresh() > ROSTER_MISS_REFRESH_INTERVAL_MS) {
+						refreshRosterIndex();
 					}
-
-					// set occupation state depending on report
-					OccupationState state = report.isEmpty() ? OccupationState.UNKNOWN : (report.endsWith("exits") ? OccupationState.UNOCCUPIED : OccupationState.OCCUPIED);
-
-					// query train name depending on occupation state
-					if(state == OccupationState.OCCUPIED) {
-						String dccAddress = report.substring(0, report.indexOf(" "));
-						// get all roster entries
-						JSONArray rosterEntries = getType("rosterEntry");
-						// filter using reported DCC address
-						for(int k = 0; k < rosterEntries.length(); k++) {
-							// if the dcc address of the iterated train matches the reported address, add the trains customized name to the layoutBlockOccupations map
-							if(rosterEntries.getJSONObject(k).getJSONObject("data").getString("address").equals(dccAddress)) {
-									// add name to occupations map
-								synchronized (layoutBlockOccupations) {
-									String trainName = rosterEntries.getJSONObject(k).getJSONObject("data").getString("name");
-									//layoutBlockOccupations.clear();
-									if (layoutBlockOccupations.containsKey(blockName)) {
-										layoutBlockOccupations.replace(blockName, trainName);
-									}else layoutBlockOccupations.put(blockName, trainName);
-
-									System.out.println(blockName+ "" + trainName);
-									// remove the same train from other blocks, because trains can only occupy one block at a time
-
-									for (String key : layoutBlockOccupations.keySet()) {
-										if (!key.equals(blockName)) {
-											if (layoutBlockOccupations.get(key).equals(trainName)) {
-												layoutBlockOccupations.remove(key); //HIER STAND blockName.. MUSS key SEIN
-												// TODO Check if this is a concurrent modification
-											}
-										}
-									}
-								}
-								
-								break; // there should only be one train with a matching dcc address
-							}
-						}
-					}					
+					retryReport(reporter.getName(), report);
+					continue;
 				}
 				
-				// sleep
-				try {
-					Thread.sleep(200); // TODO make this configurable using the config file
-				} catch (InterruptedException e) {} 
-			} while(true);
-		});
-		layoutBlockListenerThread.start();
+				// record the train's customized name as occupying the block (and, depending on
+				// the configured policy, releasing the block it has occupied the longest)
+				occupancyIndex.occupy(blockName, rosterEntry.getName());
+			}
+		}
+		return reportsChanged;
+	}
+	
+	/**
+	 * Makes the next poll process the given report again, although it has not
+	 * changed, because the train it reports has not been found in the roster.
+	 * 
+	 * @param reporterName The system name of the reporter
+	 * @param report       The report
+	 */
+	private void retryReport(String reporterName, String report) {
+		lastReports.remove(reporterName);
+		unresolvedReports.put(reporterName, report);
 	}
 	
 	// ============ JMRI WiThrottle functions section ============
 
 	private final String THROTTLE_ID = "T";
-	private HashMap<String, Integer> lastReceivedTrainSpeeds = new HashMap<>();
-	private HashMap<String, MovingDirection> lastReceivedTrainDirections = new HashMap<>();
 	
 	@Override
 	public void addLocomotive(String locomotiveReference, String address) {
@@ -264,6 +1113,7 @@ public class JMRIInterfaceImplementation implements JMRIInterface {
 	@Override
 	public void removeLocomotive(String locomotiveReference) {
 		sendCommand("-", locomotiveReference, "<;>", "r");
+		throttleStateMirror.remove(locomotiveReference);
 	}
 
 	@Override
@@ -284,40 +1134,46 @@ public class JMRIInterfaceImplementation implements JMRIInterface {
 	@Override
 	public void setMovingDirection(String locomotiveReference, MovingDirection movingDirection) {
 		sendCommand("A", locomotiveReference, "<;>", "R", movingDirection == MovingDirection.FORWARD ? "1" : "0");
+		throttleStateMirror.setMovingDirection(locomotiveReference, movingDirection);
 	}
 
 	@Override
 	public void setSpeed(String locomotiveReference, int speed) {
 		sendCommand("A", locomotiveReference, "<;>", "V", String.valueOf(speed));
+		throttleStateMirror.setSpeed(locomotiveReference, speed);
 	}
 
 	@Override
 	public MovingDirection getMovingDirection(String locomotiveReference) {
-		// the prefix of the expected result string
-		String queryResultPrefix = "M" + THROTTLE_ID + "A" + locomotiveReference;
-		// send the command, receive the results
-		String[] queryResults = sendCommand("A", locomotiveReference, "<;>", "qR");
-		// process all the results
-		processQueryResults(queryResults, queryResultPrefix);
-		// return the relevant result
-		return lastReceivedTrainDirections.get(queryResultPrefix);
+		MovingDirection movingDirection = throttleStateMirror.get(locomotiveReference).getMovingDirection();
+		if(movingDirection == null) {
+			// not reported yet, so ask the server; its answer is recorded by the mirror
+			sendQuery("M" + THROTTLE_ID + "A" + locomotiveReference + "<;>R", "A", locomotiveReference, "<;>", "qR");
+			movingDirection = throttleStateMirror.get(locomotiveReference).getMovingDirection();
+		}
+		return movingDirection;
 	}
 
 	@Override
 	public int getSpeed(String locomotiveReference) {
-		// the prefix of the expected result string
-		String queryResultPrefix = "M" + THROTTLE_ID + "A" + locomotiveReference;
-		// send the command, receive the results
-		String[] queryResults = sendCommand("A", locomotiveReference, "<;>", "qV");
-		// process all the results
-		processQueryResults(queryResults, queryResultPrefix);
-		// return the relevant result
-		return lastReceivedTrainSpeeds.get(queryResultPrefix);
+		int speed = throttleStateMirror.get(locomotiveReference).getSpeed();
+		if(speed < 0) {
+			// not reported yet, so ask the server; its answer is recorded by the mirror
+			sendQuery("M" + THROTTLE_ID + "A" + locomotiveReference + "<;>V", "A", locomotiveReference, "<;>", "qV");
+			speed = throttleStateMirror.get(locomotiveReference).getSpeed();
+		}
+		return speed;
+	}
+
+	@Override
+	public LocomotiveState getLocomotiveState(String locomotiveReference) {
+		return throttleStateMirror.get(locomotiveReference);
 	}
 
 	@Override
 	public void doEmergencyStop(String locomotiveReference) {
 		sendCommand("A", locomotiveReference, "<;>", "X");
+		throttleStateMirror.setSpeed(locomotiveReference, 0);
 	}
 
 	@Override
@@ -327,30 +1183,37 @@ public class JMRIInterfaceImplementation implements JMRIInterface {
 	}
 	
 	/**
-	 * Sends a command to the WiThrottle server and receives its response.
+	 * Sends a command to the WiThrottle server. The call returns as soon as the
+	 * command has been queued for writing.
 	 * 
 	 * @param commandStrings The strings from which the command is composed
-	 * @return The (possibly multi-part) response of the server
 	 */
-	private String[] sendCommand(String... commandStrings) {
-		// build command string
-		StringBuilder builder = new StringBuilder();
-		for(String s : commandStrings) {
-			builder.append(s);
+	private void sendCommand(String... commandStrings) {
+		try {
+			throttleClient.send(buildCommand(commandStrings));
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
+	}
+	
+	/**
+	 * Sends a query to the WiThrottle server and waits for its answer, at most
+	 * for the query timeout configured for the WiThrottle server. Once the
+	 * answer has been received, it has been recorded by the throttle state
+	 * mirror as well.
+	 * 
+	 * @param answerPrefix   The prefix of the line answering the query, up to and
+	 *                       including the first character after the separator
+	 * @param commandStrings The strings from which the command is composed
+	 * @return The answer of the server; null if it has not answered in time
+	 */
+	private String sendQuery(String answerPrefix, String... commandStrings) {
 		try {
-//			throttleClient.send("M" + THROTTLE_ID + builder.toString());
-//			return throttleClient.receive(500);
-			
-			// \/ BEGIN OF DEBUG \/
-			String cmd = "M" + THROTTLE_ID + builder.toString();
-			System.out.println("\n>>" + cmd);
-			throttleClient.send(cmd);
-			String debugStrings[] = throttleClient.receive(500);
-			System.out.println("<< " + Arrays.toString(debugStrings) + "\n");
-			return debugStrings;
-			// /\ END OF DEBUG /\
-			
+			String answer = throttleClient.query(buildCommand(commandStrings), answerPrefix, WITHROTTLESERVER_QUERY_TIMEOUT_MS);
+			if(answer == null) {
+				System.err.println("No answer to WiThrottle query within " + WITHROTTLESERVER_QUERY_TIMEOUT_MS + " ms: " + answerPrefix);
+			}
+			return answer;
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -358,28 +1221,34 @@ public class JMRIInterfaceImplementation implements JMRIInterface {
 	}
 	
 	/**
-	 * Processes the given (possibly multi-part) response from the server. If
-	 * information on the direction of travel or speed of a specific locomotive
-	 * identified by the prefix is included, this information is cached.
+	 * Composes a command addressed to this client's throttle.
 	 * 
-	 * @param queryResults  The (possibly multi-part) response from the server
-	 * @param messagePrefix A prefix used to identify the locomotive to which
-	 *                      information is being received.
+	 * @param commandStrings The strings from which the command is composed
+	 * @return The command
 	 */
-	private void processQueryResults(String[] queryResults, String messagePrefix) {
-		// for each part of the (possibly) multi-part result...
-		for(String singleResult : queryResults) {
-			
-			// read and store direction information
-			if(singleResult.contains(messagePrefix + "<;>R")) {
-				lastReceivedTrainDirections.put(messagePrefix, singleResult.substring(singleResult.indexOf("<;>R") + 4).equalsIgnoreCase("0") ? MovingDirection.REVERSE : MovingDirection.FORWARD);
-				
-			// read and store speed information
-			} else if(singleResult.contains(messagePrefix + "<;>V")) {
-				lastReceivedTrainSpeeds.put(messagePrefix, Integer.valueOf(singleResult.substring(singleResult.indexOf("<;>V") + 4)));
-				
-			}
-			
+	private String buildCommand(String... commandStrings) {
+		StringBuilder builder = new StringBuilder("M").append(THROTTLE_ID);
+		for(String s : commandStrings) {
+			builder.append(s);
 		}
+		return builder.toString();
+	}
+	
+	// ============ Diagnostics section ============
+	
+	@Override
+	public Map<String, Long> getStatistics() {
+		Map<String, Long> statistics = new LinkedHashMap<>();
+		statistics.put("web.requests", webClient.getRequestCount());
+		statistics.put("web.coalescedRequests", webClient.getCoalescedRequestCount());
+		statistics.put("cache.hits", itemCache.getHitCount());
+		statistics.put("cache.misses", itemCache.getMissCount());
+		statistics.put("occupancy.pollIntervalMs", pollIntervalMs);
+		statistics.put("occupancy.reportsProcessed", processedReportCount.get());
+		statistics.put("occupancy.reportsSkipped", skippedReportCount.get());
+		statistics.put("throttle.coalescedCommands", throttleClient.getCoalescedCommandCount());
+		statistics.put("throttle.queueDepth", (long) throttleClient.getQueueDepth());
+		statistics.put("throttle.maxQueueDepth", (long) throttleClient.getMaxQueueDepth());
+		return statistics;
 	}
 }
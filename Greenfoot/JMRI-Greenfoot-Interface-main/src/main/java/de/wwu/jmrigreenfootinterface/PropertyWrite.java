@@ -0,0 +1,63 @@
+package de.wwu.jmrigreenfootinterface;
+
+/**
+ * Describes the intention to set a property of an entity in JMRI to a certain
+ * value, e.g. to throw a turnout. Several of these can be sent together using
+ * JMRIInterface.setProperties(), e.g. to set all turnouts of a route at once.
+ */
+public final class PropertyWrite {
+
+	private final String type;
+	private final String itemName;
+	private final String propertyName;
+	private final Object value;
+
+	/**
+	 * Creates the description of a write.
+	 * 
+	 * @param type         The given type of the entity, e.g. turnout
+	 * @param itemName     The given name of the entity
+	 * @param propertyName The given name of the entitiy's property
+	 * @param value        The value that the property should have
+	 */
+	public PropertyWrite(String type, String itemName, String propertyName, Object value) {
+		this.type = type;
+		this.itemName = itemName;
+		this.propertyName = propertyName;
+		this.value = value;
+	}
+
+	/**
+	 * @return The type of the entity, e.g. turnout
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * @return The name of the entity
+	 */
+	public String getItemName() {
+		return itemName;
+	}
+
+	/**
+	 * @return The name of the entitiy's property
+	 */
+	public String getPropertyName() {
+		return propertyName;
+	}
+
+	/**
+	 * @return The value that the property should have
+	 */
+	public Object getValue() {
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return type + "/" + itemName + "." + propertyName + "=" + value;
+	}
+
+}
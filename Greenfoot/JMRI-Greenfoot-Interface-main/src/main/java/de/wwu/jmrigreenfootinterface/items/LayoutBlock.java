@@ -0,0 +1,76 @@
+package de.wwu.jmrigreenfootinterface.items;
+
+import org.json.JSONObject;
+
+/**
+ * An immutable representation of a layout block created in JMRI.
+ */
+public final class LayoutBlock {
+
+	/**
+	 * The state code JMRI uses for occupied layout blocks
+	 */
+	public static final int STATE_OCCUPIED = 2;
+
+	private final String name;
+	private final String userName;
+	private final int state;
+
+	/**
+	 * Creates a layout block with the given properties.
+	 * 
+	 * @param name     The system name of the layout block
+	 * @param userName The user name of the layout block; may be null
+	 * @param state    The state code of the layout block
+	 */
+	public LayoutBlock(String name, String userName, int state) {
+		this.name = name;
+		this.userName = userName;
+		this.state = state;
+	}
+
+	/**
+	 * Decodes a layout block from its JSON representation as sent by JMRI.
+	 * 
+	 * @param item The layout block as JSONObject, containing its type and its data
+	 * @return The decoded layout block
+	 */
+	public static LayoutBlock fromJson(JSONObject item) {
+		JSONObject data = item.getJSONObject("data");
+		return new LayoutBlock(data.getString("name"), data.optString("userName", null), data.optInt("state", 0));
+	}
+
+	/**
+	 * @return The system name of the layout block
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return The user name of the layout block; null if it has none
+	 */
+	public String getUserName() {
+		return userName;
+	}
+
+	/**
+	 * @return The state code of the layout block
+	 */
+	public int getState() {
+		return state;
+	}
+
+	/**
+	 * @return true if the layout block is occupied, i.e. there is a train on it
+	 */
+	public boolean isOccupied() {
+		return state == STATE_OCCUPIED;
+	}
+
+	@Override
+	public String toString() {
+		return "LayoutBlock[" + name + ": " + state + "]";
+	}
+
+}
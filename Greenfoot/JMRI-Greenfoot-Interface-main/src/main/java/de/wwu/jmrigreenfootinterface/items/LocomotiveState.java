@@ -0,0 +1,115 @@
+package de.wwu.jmrigreenfootinterface.items;
+
+/**
+ * An immutable representation of the state of a locomotive controlled via the
+ * WiThrottle protocol, as last reported by the WiThrottle server or last set by
+ * this client. Each property may be unknown, e.g. if the server has not
+ * reported it yet.
+ */
+public final class LocomotiveState {
+
+	/**
+	 * The state of a locomotive of which nothing is known yet
+	 */
+	public static final LocomotiveState UNKNOWN = new LocomotiveState(-1, null, 0L, -1);
+
+	private final int speed;
+	private final MovingDirection movingDirection;
+	private final long functions;
+	private final int speedStepMode;
+
+	/**
+	 * Creates a locomotive state with the given properties.
+	 *
+	 * @param speed           The speed of the locomotive; -1 if unknown
+	 * @param movingDirection The direction of travel; null if unknown
+	 * @param functions       The states of the functions F0 to F63, one bit per
+	 *                        function, set if the function is active
+	 * @param speedStepMode   The speed step mode as encoded by the WiThrottle
+	 *                        protocol, e.g. 1 for 128 and 2 for 28 speed steps;
+	 *                        -1 if unknown
+	 */
+	public LocomotiveState(int speed, MovingDirection movingDirection, long functions, int speedStepMode) {
+		this.speed = speed;
+		this.movingDirection = movingDirection;
+		this.functions = functions;
+		this.speedStepMode = speedStepMode;
+	}
+
+	/**
+	 * @return The speed of the locomotive; -1 if unknown
+	 */
+	public int getSpeed() {
+		return speed;
+	}
+
+	/**
+	 * @return The direction of travel; null if unknown
+	 */
+	public MovingDirection getMovingDirection() {
+		return movingDirection;
+	}
+
+	/**
+	 * @param functionNumber The number of the function, e.g. 0 for the lights
+	 * @return true if the function is active; false if it is not, if its state is
+	 *         unknown or if the number is out of the range of F0 to F63
+	 */
+	public boolean isFunctionActive(int functionNumber) {
+		return functionNumber >= 0 && functionNumber < Long.SIZE && (functions & (1L << functionNumber)) != 0;
+	}
+
+	/**
+	 * @return The speed step mode as encoded by the WiThrottle protocol, i.e. 1 for
+	 *         128, 2 for 28, 4 for 27, 8 for 14 and 16 for 28 interleaved speed
+	 *         steps; -1 if unknown
+	 */
+	public int getSpeedStepMode() {
+		return speedStepMode;
+	}
+
+	/**
+	 * @param speed The new speed
+	 * @return A copy of this state with the given speed
+	 */
+	public LocomotiveState withSpeed(int speed) {
+		return new LocomotiveState(speed, movingDirection, functions, speedStepMode);
+	}
+
+	/**
+	 * @param movingDirection The new direction of travel
+	 * @return A copy of this state with the given direction of travel
+	 */
+	public LocomotiveState withMovingDirection(MovingDirection movingDirection) {
+		return new LocomotiveState(speed, movingDirection, functions, speedStepMode);
+	}
+
+	/**
+	 * @param functionNumber The number of the function; ignored if out of the range
+	 *                       of F0 to F63
+	 * @param active         Whether the function is active
+	 * @return A copy of this state with the given function state
+	 */
+	public LocomotiveState withFunction(int functionNumber, boolean active) {
+		if(functionNumber < 0 || functionNumber >= Long.SIZE) {
+			return this;
+		}
+		long bit = 1L << functionNumber;
+		return new LocomotiveState(speed, movingDirection, active ? functions | bit : functions & ~bit, speedStepMode);
+	}
+
+	/**
+	 * @param speedStepMode The new speed step mode
+	 * @return A copy of this state with the given speed step mode
+	 */
+	public LocomotiveState withSpeedStepMode(int speedStepMode) {
+		return new LocomotiveState(speed, movingDirection, functions, speedStepMode);
+	}
+
+	@Override
+	public String toString() {
+		return "LocomotiveState[speed " + speed + ", " + movingDirection + ", functions " + Long.toBinaryString(functions)
+				+ ", speed step mode " + speedStepMode + "]";
+	}
+
+}
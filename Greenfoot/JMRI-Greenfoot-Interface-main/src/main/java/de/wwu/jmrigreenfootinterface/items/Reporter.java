@@ -0,0 +1,66 @@
+package de.wwu.jmrigreenfootinterface.items;
+
+import org.json.JSONObject;
+
+/**
+ * An immutable representation of a reporter created in JMRI. Reporters report
+ * e.g. the DCC address of a train detected on the track section they monitor.
+ */
+public final class Reporter {
+
+	private final String name;
+	private final String userName;
+	private final String report;
+
+	/**
+	 * Creates a reporter with the given properties.
+	 * 
+	 * @param name     The system name of the reporter
+	 * @param userName The user name of the reporter; may be null
+	 * @param report   The current report of the reporter; may be null
+	 */
+	public Reporter(String name, String userName, String report) {
+		this.name = name;
+		this.userName = userName;
+		this.report = report;
+	}
+
+	/**
+	 * Decodes a reporter from its JSON representation as sent by JMRI.
+	 * 
+	 * @param item The reporter as JSONObject, containing its type and its data
+	 * @return The decoded reporter
+	 */
+	public static Reporter fromJson(JSONObject item) {
+		JSONObject data = item.getJSONObject("data");
+		return new Reporter(data.getString("name"), data.optString("userName", null),
+				data.isNull("report") ? null : data.getString("report"));
+	}
+
+	/**
+	 * @return The system name of the reporter, e.g. IR100
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return The user name of the reporter; null if it has none
+	 */
+	public String getUserName() {
+		return userName;
+	}
+
+	/**
+	 * @return The current report of the reporter; null if there is none
+	 */
+	public String getReport() {
+		return report;
+	}
+
+	@Override
+	public String toString() {
+		return "Reporter[" + name + ": " + report + "]";
+	}
+
+}
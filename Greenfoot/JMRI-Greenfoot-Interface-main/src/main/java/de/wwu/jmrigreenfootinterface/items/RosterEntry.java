@@ -0,0 +1,65 @@
+package de.wwu.jmrigreenfootinterface.items;
+
+import org.json.JSONObject;
+
+/**
+ * An immutable representation of a roster entry in JMRI, i.e. a train known
+ * by its name and DCC address.
+ */
+public final class RosterEntry {
+
+	private final String name;
+	private final String address;
+	private final boolean longAddress;
+
+	/**
+	 * Creates a roster entry with the given properties.
+	 * 
+	 * @param name        The name of the train
+	 * @param address     The DCC address of the train, e.g. 3
+	 * @param longAddress true if the DCC address is a long address
+	 */
+	public RosterEntry(String name, String address, boolean longAddress) {
+		this.name = name;
+		this.address = address;
+		this.longAddress = longAddress;
+	}
+
+	/**
+	 * Decodes a roster entry from its JSON representation as sent by JMRI.
+	 * 
+	 * @param item The roster entry as JSONObject, containing its type and its data
+	 * @return The decoded roster entry
+	 */
+	public static RosterEntry fromJson(JSONObject item) {
+		JSONObject data = item.getJSONObject("data");
+		return new RosterEntry(data.getString("name"), data.getString("address"), data.optBoolean("isLongAddress", false));
+	}
+
+	/**
+	 * @return The name of the train
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return The DCC address of the train, e.g. 3
+	 */
+	public String getAddress() {
+		return address;
+	}
+
+	/**
+	 * @return true if the DCC address is a long address
+	 */
+	public boolean isLongAddress() {
+		return longAddress;
+	}
+
+	@Override
+	public String toString() {
+		return "RosterEntry[" + name + ": " + address + "]";
+	}
+
+}
@@ -0,0 +1,77 @@
+package de.wwu.jmrigreenfootinterface.items;
+
+import org.json.JSONObject;
+
+/**
+ * An immutable representation of a turnout created in JMRI.
+ */
+public final class TurnoutItem {
+
+	private final String name;
+	private final String userName;
+	private final TurnoutState state;
+	private final boolean inverted;
+
+	/**
+	 * Creates a turnout with the given properties.
+	 * 
+	 * @param name     The system name of the turnout
+	 * @param userName The user name of the turnout; may be null
+	 * @param state    The state of the turnout
+	 * @param inverted true if the turnout's states are inverted in JMRI
+	 */
+	public TurnoutItem(String name, String userName, TurnoutState state, boolean inverted) {
+		this.name = name;
+		this.userName = userName;
+		this.state = state;
+		this.inverted = inverted;
+	}
+
+	/**
+	 * Decodes a turnout from its JSON representation as sent by JMRI. Unknown state
+	 * codes are decoded as TurnoutState.UNKNOWN.
+	 * 
+	 * @param item The turnout as JSONObject, containing its type and its data
+	 * @return The decoded turnout
+	 */
+	public static TurnoutItem fromJson(JSONObject item) {
+		JSONObject data = item.getJSONObject("data");
+		TurnoutState state = TurnoutState.fromCode(data.optInt("state", TurnoutState.UNKNOWN.getStateCode()));
+		return new TurnoutItem(data.getString("name"), data.optString("userName", null),
+				state == null ? TurnoutState.UNKNOWN : state, data.optBoolean("inverted", false));
+	}
+
+	/**
+	 * @return The system name of the turnout, e.g. DT2
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return The user name of the turnout; null if it has none
+	 */
+	public String getUserName() {
+		return userName;
+	}
+
+	/**
+	 * @return The state of the turnout
+	 */
+	public TurnoutState getState() {
+		return state;
+	}
+
+	/**
+	 * @return true if the turnout's states are inverted in JMRI
+	 */
+	public boolean isInverted() {
+		return inverted;
+	}
+
+	@Override
+	public String toString() {
+		return "Turnout[" + name + ": " + state + "]";
+	}
+
+}
@@ -0,0 +1,375 @@
+package de.wwu.jmrigreenfootinterface.net;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A client for the JSON WebSocket endpoint of the JMRI WebServer. In contrast
+ * to the request/response based WebSocketClient, this client keeps a single
+ * connection open. Items that have been subscribed to are pushed by JMRI
+ * whenever their state changes. The latest known state of every subscribed item
+ * is kept, so that it can be read without any network I/O.
+ */
+public class JsonPushClient {
+
+	/**
+	 * Receives the items pushed by the JMRI WebServer.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called on the WebSocket's receiving thread whenever JMRI pushes the state
+		 * of a subscribed item.
+		 *
+		 * @param type The (singular) type of the item, e.g. turnout or reporter
+		 * @param item The item as JSONObject, containing its type and its data
+		 */
+		public void onItemUpdate(String type, JSONObject item);
+	}
+
+	private static final int CONNECT_TIMEOUT_MS = 5000;
+	private static final int DEFAULT_HEARTBEAT_MS = 10000;
+
+	private String host, port;
+
+	private final HttpClient httpClient = HttpClient.newHttpClient();
+	private WebSocket webSocket;
+	private volatile boolean connected;
+	private ScheduledExecutorService heartbeatExecutor;
+
+	/**
+	 * The latest known item of every type and name, e.g. turnout -> IT1 -> item
+	 */
+	private final Map<String, Map<String, JSONObject>> latestItems = new ConcurrentHashMap<>();
+	/**
+	 * The types of which the complete list has been received at least once
+	 */
+	private final Set<String> listedTypes = ConcurrentHashMap.newKeySet();
+	/**
+	 * The types whose list has been requested, but not been received yet, in the
+	 * order of the requests; needed to recognise the type of an empty list
+	 */
+	private final Queue<String> requestedLists = new ConcurrentLinkedQueue<>();
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Creates an instance of the client with given host and port of the JMRI
+	 * WebServer
+	 *
+	 * @param host The host of the JMRI WebServer
+	 * @param port The Port of the JMRI WebServer
+	 */
+	public JsonPushClient(String host, String port) {
+		this.host = host;
+		this.port = port;
+	}
+
+	/**
+	 * Opens the WebSocket connection to the JSON endpoint of the JMRI WebServer.
+	 * The constant class variable CONNECT_TIMEOUT_MS serves as a timeout.
+	 *
+	 * @throws IOException If something goes wrong
+	 */
+	public void connect() throws IOException {
+		if (connected) {
+			return;
+		}
+		try {
+			webSocket = httpClient.newWebSocketBuilder()
+					.buildAsync(URI.create("ws://" + host + ":" + port + "/json/"), new Receiver())
+					.get(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException | ExecutionException | TimeoutException e) {
+			throw new IOException("Connecting to JMRI JSON WebSocket failed", e);
+		}
+		connected = true;
+	}
+
+	/**
+	 * Closes the connection. The latest known items are discarded, because they
+	 * are no longer kept up to date.
+	 */
+	public void disconnect() {
+		connected = false;
+		stopHeartbeat();
+		if (webSocket != null) {
+			webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "");
+		}
+		latestItems.clear();
+		listedTypes.clear();
+		requestedLists.clear();
+	}
+
+	/**
+	 * @return true if the connection is open and pushed items are kept up to date
+	 */
+	public boolean isConnected() {
+		return connected;
+	}
+
+	/**
+	 * Registers a listener to be informed about every pushed item.
+	 *
+	 * @param listener The listener
+	 */
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Deregisters a listener.
+	 *
+	 * @param listener The listener
+	 */
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Subscribes to the item of the given type with the given name. JMRI answers
+	 * with the current state of the item and pushes every later change.
+	 *
+	 * @param type     The type of the item, e.g. turnout
+	 * @param itemName The name of the item
+	 */
+	public void subscribe(String type, String itemName) {
+		send(new JSONObject().put("type", canonicalType(type)).put("data", new JSONObject().put("name", itemName)));
+	}
+
+	/**
+	 * Subscribes to all items of the given type. The list of items is requested
+	 * first, afterwards each listed item is subscribed to individually.
+	 *
+	 * @param type The type of the items, e.g. turnout
+	 */
+	public void subscribeAll(String type) {
+		requestedLists.add(canonicalType(type));
+		send(new JSONObject().put("type", canonicalType(type)).put("method", "list"));
+	}
+
+	/**
+	 * Sets the given properties of the item of the given type with the given
+	 * name. JMRI answers with the updated item.
+	 *
+	 * @param type       The type of the item, e.g. turnout
+	 * @param itemName   The name of the item
+	 * @param properties The properties to set and their values
+	 */
+	public void post(String type, String itemName, JSONObject properties) {
+		JSONObject data = new JSONObject(properties.toMap()).put("name", itemName);
+		send(new JSONObject().put("type", canonicalType(type)).put("method", "post").put("data", data));
+	}
+
+	/**
+	 * Returns the latest pushed item of the given type with the given name. The
+	 * item is shared by all callers and must not be modified.
+	 *
+	 * @param type     The type of the item, e.g. turnout or turnouts
+	 * @param itemName The name of the item
+	 * @return The latest pushed item; null if there is none (yet)
+	 */
+	public JSONObject getLatest(String type, String itemName) {
+		Map<String, JSONObject> items = latestItems.get(canonicalType(type));
+		return items == null ? null : items.get(itemName);
+	}
+
+	/**
+	 * Returns all latest pushed items of the given type, if the complete list of
+	 * that type has been received before. The collection is new, but the items
+	 * are shared by all callers and must not be modified.
+	 *
+	 * @param type The type of the items, e.g. reporter or reporters
+	 * @return The latest pushed items; null if the list of that type is not known
+	 *         (yet)
+	 */
+	public Collection<JSONObject> getLatestOfType(String type) {
+		String canonicalType = canonicalType(type);
+		if (!listedTypes.contains(canonicalType)) {
+			return null;
+		}
+		Map<String, JSONObject> items = latestItems.get(canonicalType);
+		return items == null ? new ArrayList<>() : new ArrayList<>(items.values());
+	}
+
+	/**
+	 * Sends the given message as text frame.
+	 *
+	 * @param message The JSON message
+	 */
+	public void send(JSONObject message) {
+		if (!connected) {
+			return;
+		}
+		synchronized (this) {
+			// text frames must not be interleaved, so wait for the previous one
+			webSocket.sendText(message.toString(), true).join();
+		}
+	}
+
+	/**
+	 * Maps the type names used in the REST URLs (e.g. turnouts, layoutBlocks) to
+	 * the singular type names used in the messages of the JSON protocol.
+	 *
+	 * @param type The type name
+	 * @return The singular type name
+	 */
+	public static String canonicalType(String type) {
+		switch (type) {
+		case "turnouts":
+			return "turnout";
+		case "layoutBlocks":
+			return "layoutBlock";
+		case "reporters":
+			return "reporter";
+		case "sensors":
+			return "sensor";
+		case "blocks":
+			return "block";
+		case "roster":
+			return "rosterEntry";
+		default:
+			return type;
+		}
+	}
+
+	/**
+	 * Processes a complete text message received from the server.
+	 *
+	 * @param text The message
+	 */
+	private void processMessage(String text) {
+		// lists are sent as arrays, everything else as single objects
+		boolean isList = text.startsWith("[");
+		JSONArray messages;
+		try {
+			messages = isList ? new JSONArray(text) : new JSONArray().put(new JSONObject(text));
+		} catch (JSONException e) {
+			System.err.println("Ignoring malformed JSON message: " + text);
+			return;
+		}
+		// JMRI answers list requests in order; an empty list does not reveal its type otherwise
+		String listedType = isList ? requestedLists.poll() : null;
+		for (int i = 0; i < messages.length(); i++) {
+			JSONObject item = messages.optJSONObject(i);
+			if (item == null || !item.has("type")) {
+				continue;
+			}
+			String type = item.getString("type");
+			if (type.equals("hello")) {
+				startHeartbeat(item.optJSONObject("data"));
+				continue;
+			}
+			JSONObject data = item.optJSONObject("data");
+			if (data == null || !data.has("name")) {
+				continue;
+			}
+			String itemName = data.getString("name");
+			latestItems.computeIfAbsent(type, t -> new ConcurrentHashMap<>()).put(itemName, item);
+			if (isList) {
+				// a listed item is not yet subscribed to
+				listedType = type;
+				subscribe(type, itemName);
+			} else {
+				for (Listener listener : listeners) {
+					listener.onItemUpdate(type, item);
+				}
+			}
+		}
+		if (listedType != null) {
+			listedTypes.add(listedType);
+		}
+	}
+
+	/**
+	 * Starts sending pings at the rate demanded in the server's hello message so
+	 * that the server does not close the connection.
+	 *
+	 * @param helloData The data of the server's hello message
+	 */
+	private void startHeartbeat(JSONObject helloData) {
+		int heartbeat = helloData == null ? DEFAULT_HEARTBEAT_MS : helloData.optInt("heartbeat", DEFAULT_HEARTBEAT_MS);
+		stopHeartbeat();
+		heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "JMRI JSON heartbeat");
+			thread.setDaemon(true);
+			return thread;
+		});
+		// ping somewhat more often than demanded to compensate for latency
+		long interval = Math.max(1000, heartbeat * 4L / 5);
+		heartbeatExecutor.scheduleAtFixedRate(() -> send(new JSONObject().put("type", "ping")), interval, interval,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops sending pings.
+	 */
+	private void stopHeartbeat() {
+		if (heartbeatExecutor != null) {
+			heartbeatExecutor.shutdownNow();
+			heartbeatExecutor = null;
+		}
+	}
+
+	/**
+	 * Collects the (possibly fragmented) text frames and handles the closing of
+	 * the connection.
+	 */
+	private class Receiver implements WebSocket.Listener {
+
+		private final StringBuilder buffer = new StringBuilder();
+
+		@Override
+		public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+			buffer.append(data);
+			if (last) {
+				String text = buffer.toString().trim();
+				buffer.setLength(0);
+				processMessage(text);
+			}
+			webSocket.request(1);
+			return null;
+		}
+
+		@Override
+		public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+			System.err.println("JMRI JSON WebSocket closed: " + statusCode + " " + reason);
+			markDisconnected();
+			return null;
+		}
+
+		@Override
+		public void onError(WebSocket webSocket, Throwable error) {
+			System.err.println("JMRI JSON WebSocket failed: " + error.getMessage());
+			markDisconnected();
+		}
+
+		private void markDisconnected() {
+			connected = false;
+			stopHeartbeat();
+			latestItems.clear();
+			listedTypes.clear();
+			requestedLists.clear();
+		}
+	}
+
+}
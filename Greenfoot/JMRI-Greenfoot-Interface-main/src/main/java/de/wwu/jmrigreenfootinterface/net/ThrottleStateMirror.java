@@ -0,0 +1,152 @@
+package de.wwu.jmrigreenfootinterface.net;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.wwu.jmrigreenfootinterface.items.LocomotiveState;
+import de.wwu.jmrigreenfootinterface.items.MovingDirection;
+
+/**
+ * A mirror of the state of every locomotive controlled via the WiThrottle
+ * protocol. The WiThrottle server sends the speed, direction of travel,
+ * function states and speed step mode of a locomotive when it is acquired and
+ * whenever they change afterwards, no matter whether the change has been
+ * queried or caused by this or another client. Fed with every line received as
+ * a WiThrottleClient.Listener, the mirror therefore knows the current state
+ * without asking the server. Changes requested by this client are recorded
+ * right away, before the server confirms them.<br>
+ * Locomotives are identified by their reference, e.g. S3, regardless of the
+ * throttle controlling them. The mirror can be read by any thread.
+ */
+public class ThrottleStateMirror implements WiThrottleClient.Listener {
+
+	private static final String SEPARATOR = "<;>";
+
+	private final Map<String, LocomotiveState> states = new ConcurrentHashMap<>();
+
+	/**
+	 * Records the information contained in a line sent by the WiThrottle server,
+	 * e.g. <code>MTAS3&lt;;&gt;V42</code>. Lines not concerning a locomotive are
+	 * ignored.
+	 *
+	 * @param line The line
+	 */
+	@Override
+	public void onLine(String line) {
+		// M, the throttle, the action, the locomotive, the separator and the payload
+		if(line.length() < 4 || line.charAt(0) != 'M') {
+			return;
+		}
+		int separatorIndex = line.indexOf(SEPARATOR, 3);
+		if(separatorIndex < 0) {
+			return;
+		}
+		char action = line.charAt(2);
+		String locomotiveReference = line.substring(3, separatorIndex);
+		switch (action) {
+		case '+':
+			// acquired, its state is sent right afterwards
+			states.putIfAbsent(locomotiveReference, LocomotiveState.UNKNOWN);
+			break;
+		case '-':
+			remove(locomotiveReference);
+			break;
+		case 'A':
+			int payloadIndex = separatorIndex + SEPARATOR.length();
+			if(payloadIndex < line.length()) {
+				update(locomotiveReference, line, payloadIndex);
+			}
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Records a speed set by this client.
+	 *
+	 * @param locomotiveReference The reference of the locomotive, e.g. S3
+	 * @param speed               The speed
+	 */
+	public void setSpeed(String locomotiveReference, int speed) {
+		states.merge(locomotiveReference, LocomotiveState.UNKNOWN.withSpeed(speed), (state, unknown) -> state.withSpeed(speed));
+	}
+
+	/**
+	 * Records a direction of travel set by this client.
+	 *
+	 * @param locomotiveReference The reference of the locomotive, e.g. S3
+	 * @param movingDirection     The direction of travel
+	 */
+	public void setMovingDirection(String locomotiveReference, MovingDirection movingDirection) {
+		states.merge(locomotiveReference, LocomotiveState.UNKNOWN.withMovingDirection(movingDirection),
+				(state, unknown) -> state.withMovingDirection(movingDirection));
+	}
+
+	/**
+	 * Forgets the state of a released locomotive.
+	 *
+	 * @param locomotiveReference The reference of the locomotive, e.g. S3; * for all
+	 *                            locomotives
+	 */
+	public void remove(String locomotiveReference) {
+		if(locomotiveReference.equals("*")) {
+			states.clear();
+		} else {
+			states.remove(locomotiveReference);
+		}
+	}
+
+	/**
+	 * @param locomotiveReference The reference of the locomotive, e.g. S3
+	 * @return The state of the locomotive; LocomotiveState.UNKNOWN if nothing is
+	 *         known about it
+	 */
+	public LocomotiveState get(String locomotiveReference) {
+		LocomotiveState state = states.get(locomotiveReference);
+		return state == null ? LocomotiveState.UNKNOWN : state;
+	}
+
+	/**
+	 * Applies the payload of a state line to the state of the locomotive.
+	 *
+	 * @param locomotiveReference The reference of the locomotive
+	 * @param line                The line
+	 * @param payloadIndex        The index of the payload in the line, e.g. of
+	 *                            V42
+	 */
+	private void update(String locomotiveReference, String line, int payloadIndex) {
+		char property = line.charAt(payloadIndex);
+		try {
+			switch (property) {
+			case 'V':
+				// a negative speed denotes an emergency stop
+				int speed = Math.max(0, Integer.parseInt(line.substring(payloadIndex + 1)));
+				setSpeed(locomotiveReference, speed);
+				break;
+			case 'R':
+				setMovingDirection(locomotiveReference, line.substring(payloadIndex + 1).equals("0") ? MovingDirection.REVERSE : MovingDirection.FORWARD);
+				break;
+			case 'F':
+				// F, the state and the number of the function, e.g. F112 if F12 is active
+				if(payloadIndex + 2 < line.length()) {
+					boolean active = line.charAt(payloadIndex + 1) == '1';
+					int functionNumber = Integer.parseInt(line.substring(payloadIndex + 2));
+					states.merge(locomotiveReference, LocomotiveState.UNKNOWN.withFunction(functionNumber, active),
+							(state, unknown) -> state.withFunction(functionNumber, active));
+				}
+				break;
+			case 's':
+				int speedStepMode = Integer.parseInt(line.substring(payloadIndex + 1));
+				states.merge(locomotiveReference, LocomotiveState.UNKNOWN.withSpeedStepMode(speedStepMode),
+						(state, unknown) -> state.withSpeedStepMode(speedStepMode));
+				break;
+			default:
+				break;
+			}
+		} catch (NumberFormatException e) {
+			System.err.println("Malformed WiThrottle line: " + line);
+		}
+	}
+
+}
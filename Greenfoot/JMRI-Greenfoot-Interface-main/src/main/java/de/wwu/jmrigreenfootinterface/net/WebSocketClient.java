@@ -1,90 +1,278 @@
 package de.wwu.jmrigreenfootinterface.net;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.Scanner;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONException;
+import org.json.JSONTokener;
 
 /**
- * A client for communication with the JMRI WebServer
- * 
+ * A client for communication with the JMRI WebServer. All requests are sent
+ * through one shared HttpClient, which keeps the connections to the WebServer
+ * alive and reuses them for subsequent requests. Identical GET requests issued
+ * concurrently share a single round-trip to the WebServer.<br>
+ * Responses are decoded while they are being received, i.e. the JSON values
+ * are parsed directly from the connection's input stream without building an
+ * intermediate String first.
+ *
  * @author Leonard Bienbeck
  */
 public class WebSocketClient {
 
-	private String host, port;
+	public static final int DEFAULT_CONNECT_TIMEOUT_MS = 5000;
+	public static final int DEFAULT_READ_TIMEOUT_MS = 5000;
+	public static final int DEFAULT_MAX_CONNECTIONS = 4;
+	public static final int DEFAULT_IDLE_TIMEOUT_S = 30;
+
+	private String baseUrl;
+	private int readTimeoutMs;
+
+	/**
+	 * The shared client keeping the pool of connections
+	 */
+	private HttpClient httpClient;
+	/**
+	 * Limits the number of connections used at the same time
+	 */
+	private Semaphore connectionPermits;
+
+	/**
+	 * The GET requests currently in progress, identified by their endpoint
+	 */
+	private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlightGets = new ConcurrentHashMap<>();
+	private final AtomicLong requestCount = new AtomicLong();
+	private final AtomicLong coalescedRequestCount = new AtomicLong();
 
 	/**
 	 * Creates an instance of the client with given host and port of the JMRI
-	 * WebServer
-	 * 
+	 * WebServer and the given parameters of the connection pool.
+	 *
+	 * @param host               The host of the JMRI WebServer
+	 * @param port               The Port of the JMRI WebServer
+	 * @param connectTimeoutMs   The maximum time to establish a connection
+	 * @param readTimeoutMs      The maximum time to wait for a response
+	 * @param maxConnections     The maximum number of connections used at the
+	 *                           same time
+	 * @param idleTimeoutSeconds The time after which an unused connection is
+	 *                           closed
+	 */
+	public WebSocketClient(String host, String port, int connectTimeoutMs, int readTimeoutMs, int maxConnections,
+			int idleTimeoutSeconds) {
+		this.baseUrl = "http://" + host + ":" + port + "/json/";
+		this.readTimeoutMs = readTimeoutMs;
+		this.connectionPermits = new Semaphore(maxConnections, true);
+
+		// the pool of the HttpClient is configured by system properties, which are
+		// read once, so they have to be set before the first client is created
+		setPropertyIfAbsent("jdk.httpclient.keepalive.timeout", String.valueOf(idleTimeoutSeconds));
+		setPropertyIfAbsent("jdk.httpclient.connectionPoolSize", String.valueOf(maxConnections));
+
+		this.httpClient = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_1_1)
+				.connectTimeout(Duration.ofMillis(connectTimeoutMs))
+				.build();
+	}
+
+	/**
+	 * Creates an instance of the client with given host and port of the JMRI
+	 * WebServer. The connection pool is configured using default values.
+	 *
 	 * @param host The host of the JMRI WebServer
 	 * @param port The Port of the JMRI WebServer
 	 */
 	public WebSocketClient(String host, String port) {
-		this.host = host;
-		this.port = port;
+		this(host, port, DEFAULT_CONNECT_TIMEOUT_MS, DEFAULT_READ_TIMEOUT_MS, DEFAULT_MAX_CONNECTIONS,
+				DEFAULT_IDLE_TIMEOUT_S);
 	}
 
 	/**
-	 * Creates an HttpURLConnection to the given JSON endpoint of the JMRI WebServer
-	 * 
-	 * @param endpoint The endpoint
-	 * @return The created HttpURLConnection
+	 * Sends a request to the JMRI WebServer and returns the response as String.
+	 * Prefer doJsonRequest, which does not need to convert the decoded response
+	 * back to a String.
+	 *
+	 * @param requestMethod The HTTP request method, e.g. PUT, POST or GET
+	 * @param endpoint      The given endpoint, e.g. some type supported by JMRI
+	 * @param message       The JSON message
+	 * @return The server's response
 	 * @throws IOException If something goes wrong
 	 */
-	private HttpURLConnection connect(String endpoint) throws IOException {
-		URL url = new URL("http://" + host + ":" + port + "/json/" + endpoint);
-		return (HttpURLConnection) url.openConnection();
+	public String doRequest(String requestMethod, String endpoint, String message) throws IOException {
+		Object response = doJsonRequest(requestMethod, endpoint, message);
+		return response == null ? null : response.toString();
 	}
 
 	/**
 	 * Sends a request to the JMRI WebServer. This will use the given HTTP request
-	 * method and the given endpoint to establish the connection to. The given
-	 * message is sent as Content-Type: application/json;charset=utf-8.
-	 * 
+	 * method and the given endpoint to send the request to. The given message is
+	 * sent as Content-Type: application/json;charset=utf-8. A pooled connection is
+	 * reused, if available.<br>
+	 * If a GET request to the same endpoint is already in progress, no further
+	 * request is sent. Instead, the response of the request in progress is
+	 * returned as well; the response of a GET request may therefore be shared
+	 * with other callers and must not be modified.
+	 *
 	 * @param requestMethod The HTTP request method, e.g. PUT, POST or GET
 	 * @param endpoint      The given endpoint, e.g. some type supported by JMRI
 	 * @param message       The JSON message
+	 * @return The server's decoded response, i.e. a JSONObject or a JSONArray;
+	 *         null if the request was not successful or the response was empty
+	 * @throws IOException If something goes wrong, including a malformed response
+	 */
+	public Object doJsonRequest(String requestMethod, String endpoint, String message) throws IOException {
+		if (!requestMethod.equals("GET")) {
+			return send(requestMethod, endpoint, message);
+		}
+
+		// join an identical request in progress, if there is one
+		CompletableFuture<Object> ownRequest = new CompletableFuture<>();
+		CompletableFuture<Object> sharedRequest = inFlightGets.putIfAbsent(endpoint, ownRequest);
+		if (sharedRequest != null) {
+			coalescedRequestCount.incrementAndGet();
+			return awaitSharedRequest(sharedRequest, endpoint);
+		}
+
+		// else send the request and share its response with all callers joining in
+		try {
+			Object response = send(requestMethod, endpoint, message);
+			ownRequest.complete(response);
+			return response;
+		} catch (IOException | RuntimeException e) {
+			ownRequest.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlightGets.remove(endpoint, ownRequest);
+		}
+	}
+
+	/**
+	 * Waits for the response of a request sent by another caller.
+	 *
+	 * @param sharedRequest The request sent by another caller
+	 * @param endpoint      The endpoint the request was sent to
 	 * @return The server's response
 	 * @throws IOException If something goes wrong
 	 */
-	public String doRequest(String requestMethod, String endpoint, String message) throws IOException {
-		// connect to JSON protocol endpoint
-		HttpURLConnection conn = connect(endpoint);
-
-		conn.setRequestProperty("Content-Type", "application/json;charset=utf-8");
-		conn.setRequestMethod(requestMethod);
-		conn.setDoOutput(true);
-
-		// if message is not empty, send message as request body
-		if (!message.isEmpty()) {
-			BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(conn.getOutputStream()));
-			bw.write(message);
-			bw.flush();
+	private Object awaitSharedRequest(CompletableFuture<Object> sharedRequest, String endpoint) throws IOException {
+		try {
+			return sharedRequest.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Request to " + endpoint + " was interrupted");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Request to " + endpoint + " failed", e.getCause());
+		}
+	}
+
+	/**
+	 * Actually sends a request to the JMRI WebServer.
+	 *
+	 * @param requestMethod The HTTP request method, e.g. PUT, POST or GET
+	 * @param endpoint      The given endpoint, e.g. some type supported by JMRI
+	 * @param message       The JSON message
+	 * @return The server's decoded response
+	 * @throws IOException If something goes wrong
+	 */
+	private Object send(String requestMethod, String endpoint, String message) throws IOException {
+		requestCount.incrementAndGet();
+		HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + endpoint))
+				.timeout(Duration.ofMillis(readTimeoutMs))
+				.header("Content-Type", "application/json;charset=utf-8")
+				.method(requestMethod, message.isEmpty() ? BodyPublishers.noBody()
+						: BodyPublishers.ofString(message, StandardCharsets.UTF_8))
+				.build();
+
+		try {
+			connectionPermits.acquire();
+			try {
+				HttpResponse<InputStream> response = httpClient.send(request, BodyHandlers.ofInputStream());
+				return decode(response);
+			} finally {
+				connectionPermits.release();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Request to " + endpoint + " was interrupted");
 		}
+	}
 
-		// receive response
-		int code = conn.getResponseCode();
-		// if HTTP status code is not 200, return with error
-		if (code != 200) {
-			System.err.println("Response code: " + code);
-			return null;
+	/**
+	 * Decodes the JSON value of the given response while reading it from the
+	 * connection. Afterwards, the body is always read completely, so the connection
+	 * can be reused.
+	 *
+	 * @param response The response whose body has not been read yet
+	 * @return The decoded JSON value; null if the request was not successful or
+	 *         the body was empty
+	 * @throws IOException If something goes wrong, including a malformed body
+	 */
+	private Object decode(HttpResponse<InputStream> response) throws IOException {
+		try (InputStream body = response.body()) {
+			// if HTTP status code is not 200, return with error
+			if (response.statusCode() != 200) {
+				System.err.println("Response code: " + response.statusCode());
+				body.transferTo(OutputStream.nullOutputStream());
+				return null;
+			}
+
+			JSONTokener tokener = new JSONTokener(new InputStreamReader(body, StandardCharsets.UTF_8));
+			Object value = null;
+			// an empty body (e.g. in response to some POST requests) has no value
+			if (tokener.nextClean() != 0) {
+				tokener.back();
+				value = tokener.nextValue();
+			}
+			body.transferTo(OutputStream.nullOutputStream());
+			return value;
+		} catch (JSONException e) {
+			throw new IOException("Malformed response: " + e.getMessage(), e);
 		}
+	}
+
+	/**
+	 * @return The number of requests actually sent to the WebServer
+	 */
+	public long getRequestCount() {
+		return requestCount.get();
+	}
 
-		// else (HTTP status code is 200), read response line by line and return as
-		// String
-		Scanner s = new Scanner(new BufferedReader(new InputStreamReader(conn.getInputStream())));
-		StringBuilder builder = new StringBuilder();
-		while (s.hasNextLine()) {
-			builder.append(s.nextLine() + "\n");
+	/**
+	 * @return The number of GET requests that were not sent, because they shared
+	 *         the response of an identical request in progress
+	 */
+	public long getCoalescedRequestCount() {
+		return coalescedRequestCount.get();
+	}
+
+	/**
+	 * Sets the given system property, unless it has been set before, e.g. on the
+	 * command line.
+	 *
+	 * @param key   The key of the system property
+	 * @param value The value of the system property
+	 */
+	private static void setPropertyIfAbsent(String key, String value) {
+		if (System.getProperty(key) == null) {
+			System.setProperty(key, value);
 		}
-		s.close();
-		return builder.toString().trim();
 	}
 
 }
@@ -3,53 +3,172 @@ package de.wwu.jmrigreenfootinterface.net;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStreamWriter;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * A client for communication with the JMRI WiThrottle server
- * 
+ * A client for communication with the JMRI WiThrottle server. Sending and
+ * receiving are independent of each other: commands are written to the
+ * connection as soon as they are sent, while a dedicated reader thread
+ * continuously reads the lines sent by the server. Every line is handed to all
+ * registered listeners, so that answers are processed as soon as they arrive,
+ * and each line answering a pending query completes that query afterwards.
+ * <br>
+ * Queries are correlated with their answers by the prefix of the answer, i.e.
+ * the part up to and including the first character after the separator
+ * <code>&lt;;&gt;</code>, e.g. <code>MTAS3&lt;;&gt;V</code> for the speed of
+ * locomotive S3. Identical queries issued concurrently share one answer.
+ * <br>
+ * Commands and queries are not written by the calling thread but put into a
+ * bounded queue, which a dedicated writer thread drains. While a speed or
+ * direction command for a locomotive is waiting there, a newer one for the
+ * same locomotive replaces it instead of being queued as well, so that the
+ * command station is not kept busy with outdated speeds if the connection is
+ * slower than the commands are issued. All other commands, e.g. functions and
+ * emergency stops, keep their order and are never dropped; no command waiting
+ * before them is replaced by a command issued after them. Likewise, the speed
+ * and direction commands of a locomotive keep their order relative to each
+ * other, so that e.g. stopping, reversing and starting again is not collapsed
+ * into starting and reversing at speed.
+ *
  * @author Leonard Bienbeck
  */
 public class WiThrottleClient {
 
+	/**
+	 * Receives the lines sent by the WiThrottle server.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called on the reader thread for every non-empty line sent by the server.
+		 *
+		 * @param line The line, without line terminator
+		 */
+		public void onLine(String line);
+	}
+
 	private String host, port;
 	private static final int CONNECT_TIMEOUT_MS = 5000;
-	
+	private static final int DEFAULT_HEARTBEAT_S = 10;
+	public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
 	private String clientName;
 	private UUID clientUuid;
-			
-	private Thread heartbeatThread;
-	private boolean heartActive;
-	private int heartBeatRate;
-	
+
+	private ScheduledExecutorService heartbeatExecutor;
+
 	private Socket socket;
-	private InputStream inputStream;
-	private OutputStream outputStream;
+	private volatile BufferedReader reader;
+	private BufferedWriter writer;
+	private Thread readerThread;
+	private volatile boolean connected;
+
+	/**
+	 * The separator of the parts of a command or an answer
+	 */
+	private static final String SEPARATOR = "<;>";
+
+	/**
+	 * The queries waiting for their answer, identified by the prefix of the answer
+	 */
+	private final Map<String, CompletableFuture<String>> pendingQueries = new ConcurrentHashMap<>();
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+	/**
+	 * A command waiting to be written. The command of a waiting speed or
+	 * direction command is replaced by newer ones.
+	 */
+	private static final class QueuedCommand {
+		private String command;
+
+		private QueuedCommand(String command) {
+			this.command = command;
+		}
+	}
+
+	private final int queueCapacity;
+	/**
+	 * The commands waiting to be written; guards the other fields of the queue
+	 */
+	private final Deque<QueuedCommand> queue = new ArrayDeque<>();
+	/**
+	 * The waiting commands that may still be replaced, by their coalescing key
+	 */
+	private final Map<String, QueuedCommand> replaceableCommands = new HashMap<>();
+	private Thread writerThread;
+	private boolean writing;
+	private int maxQueueDepth;
+	private final AtomicLong coalescedCommandCount = new AtomicLong();
 
 	/**
 	 * Creates an instance of this class with the given parameters characterising
 	 * the connection and login to the WiThrottle server.
-	 * 
+	 *
 	 * @param host       The host of the WiThrottle server
 	 * @param port       The port of the WiThrottle server
-	 * @param clientName The name with which the client should log on to the
-	 *                   WiThrottle server. There it appears with this name in a
-	 *                   list of connected clients.
+	 * @param clientName    The name with which the client should log on to the
+	 *                      WiThrottle server. There it appears with this name in
+	 *                      a list of connected clients.
+	 * @param queueCapacity The maximum number of commands waiting to be written
 	 */
-	public WiThrottleClient(String host, String port, String clientName) {
+	public WiThrottleClient(String host, String port, String clientName, int queueCapacity) {
 		this.host = host;
 		this.port = port;
 		this.clientName = clientName;
 		this.clientUuid = UUID.randomUUID();
+		this.queueCapacity = Math.max(1, queueCapacity);
+	}
+
+	/**
+	 * Creates an instance of this class with the given parameters characterising
+	 * the connection and login to the WiThrottle server. At most
+	 * DEFAULT_QUEUE_CAPACITY commands wait to be written.
+	 *
+	 * @param host       The host of the WiThrottle server
+	 * @param port       The port of the WiThrottle server
+	 * @param clientName The name with which the client should log on to the
+	 *                   WiThrottle server. There it appears with this name in a
+	 *                   list of connected clients.
+	 */
+	public WiThrottleClient(String host, String port, String clientName) {
+		this(host, port, clientName, DEFAULT_QUEUE_CAPACITY);
+	}
+
+	/**
+	 * Creates an instance of this class with the given parameters characterising
+	 * the connection to the WiThrottle server. The name with which the client
+	 * should log on to the WiThrottle server is created randomly. It can be
+	 * specified using another constructor.
+	 *
+	 * @param host          The host of the WiThrottle server
+	 * @param port          The port of the WiThrottle server
+	 * @param queueCapacity The maximum number of commands waiting to be written
+	 */
+	public WiThrottleClient(String host, String port, int queueCapacity) {
+		this(host, port, "WiThrottle Device #" + new Random().nextInt(9999), queueCapacity);
 	}
 
 	/**
@@ -57,12 +176,12 @@ public class WiThrottleClient {
 	 * the connection and login to the WiThrottle server. The name with which the
 	 * client should log on to the WiThrottle server is created randomly. It can be
 	 * specified using another constructor.
-	 * 
+	 *
 	 * @param host The host of the WiThrottle server
 	 * @param port The port of the WiThrottle server
 	 */
 	public WiThrottleClient(String host, String port) {
-		this(host, port, "WiThrottle Device #" + new Random().nextInt(9999));
+		this(host, port, DEFAULT_QUEUE_CAPACITY);
 	}
 
 	/**
@@ -70,127 +189,187 @@ public class WiThrottleClient {
 	 * variable CONNECT_TIMEOUT_MS serves as a timeout. The client tries to keep the
 	 * established TCP/IP connection alive. The client is logged on to the server
 	 * with the name specified or generated in the constructor. A generated, unique
-	 * ID is sent to prevent confusion with other clients.
-	 * 
+	 * ID is sent to prevent confusion with other clients. The reader thread is
+	 * started and heartbeats are sent as soon as the server demands them.
+	 *
 	 * @throws IOException If something goes wrong
 	 */
-	public void connect() throws IOException {		
+	public synchronized void connect() throws IOException {
+		// close a previous connection, which ends its reader thread
+		if(socket != null) {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
 		// connect to TCP-Server @ host:port
 		socket = new Socket();
 		socket.connect(new InetSocketAddress(host, Integer.parseInt(port)), CONNECT_TIMEOUT_MS);
 		socket.setKeepAlive(true);
-		
-		// get and store input and output streams
-		outputStream = socket.getOutputStream();
-		inputStream = socket.getInputStream();
-		
-		// send this client's name
-		send("N" + clientName);
-		String[] welcomeMsgLines = receive(500);
-		// start heart for sending heartbeats at demanded rate
-		startHeart(welcomeMsgLines);
-		
-		// send this client's unique ID
-		send("HU" + clientUuid);
-		receive(100);
+		socket.setTcpNoDelay(true);
+
+		// get and store reader and writer
+		reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+		writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+		connected = true;
+
+		// read everything the server sends from now on
+		BufferedReader connectionReader = reader;
+		readerThread = new Thread(() -> readLines(connectionReader), "WiThrottle reader");
+		readerThread.setDaemon(true);
+		readerThread.start();
+
+		// send this client's name and unique ID
+		write("N" + clientName);
+		write("HU" + clientUuid);
 	}
 
 	/**
 	 * Ensures that the connection is (re-)established if it has been lost or does not
 	 * yet exist.
-	 * 
+	 *
 	 * @throws IOException If something goes wrong
 	 */
-	private void maintainConnection() throws IOException {
-		if(socket == null || (!socket.isConnected() || socket.isClosed())) {
+	private synchronized void maintainConnection() throws IOException {
+		if(!connected || socket == null || socket.isClosed()) {
 			connect();
 		}
 	}
-	
+
 	/**
 	 * Permanently terminates the connection with the server. The heartbeat
-	 * transmitter is stopped, the connection is briefly established again - if
-	 * necessary - to send the logoff command to the server according to the
-	 * WiThrottle protocol. Afterwards, all I/O streams of the client into the
-	 * network as well as the socket are closed.
-	 * 
+	 * transmitter is stopped and the logoff command is sent to the server
+	 * according to the WiThrottle protocol after all waiting commands, for which
+	 * the connection is briefly established again - if necessary. Afterwards, the
+	 * socket is closed, which ends the reader thread. Queries still waiting for
+	 * their answer are cancelled.
+	 *
 	 * @throws IOException If something goes wrong
 	 */
 	public void disconnect() throws IOException {
 		// stop heartbeat sender
 		stopHeart();
-		
-		// make sure connection is still alive
-		maintainConnection();
-		
-		// send QUIT command
-		send("Q");
-		receive(10);
-		
-		// close streams and socket
-		try {
-			outputStream.close();
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
-		try {
-			inputStream.close();
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
-		try {
-			socket.close();
-		} catch (Exception e) {
-			e.printStackTrace();
+
+		// send QUIT command once the waiting commands have been written
+		enqueue("Q");
+		awaitWritten(CONNECT_TIMEOUT_MS);
+
+		// close the socket, including its streams
+		synchronized (this) {
+			connected = false;
+			try {
+				if(socket != null) {
+					socket.close();
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
 		}
+		cancelPendingQueries();
+	}
+
+	/**
+	 * Registers a listener to be informed about every line sent by the server.
+	 *
+	 * @param listener The listener
+	 */
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Deregisters a listener.
+	 *
+	 * @param listener The listener
+	 */
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
 	}
-	
-	/**
-	 * Receives data from the WiThrottle server. If necessary, the connection is
-	 * repaired beforehand or established first. By parameter, a short period of
-	 * time can be set to wait afterwards (attention: blocking call) before the
-	 * downstream is read buffered and line by line.
-	 * 
-	 * @param delayInMs A short period of time to wait before actually receiving
-	 * @return The message(s) received from the server
+
+	/**
+	 * Sends a query to the WiThrottle server and waits for the line answering it,
+	 * i.e. the first line with the given prefix received after the query has been
+	 * sent. If an identical query is already waiting for its answer, no further
+	 * query is sent; the answer is shared instead.
+	 *
+	 * @param query        The query, e.g. MTAS3&lt;;&gt;qV
+	 * @param answerPrefix The prefix of the answer up to and including the first
+	 *                     character after the separator, e.g. MTAS3&lt;;&gt;V
+	 * @param timeoutMs    The maximum time to wait for the answer
+	 * @return The answer; null if the server has not answered in time
 	 * @throws IOException If something goes wrong
 	 */
-	public String[] receive(long delayInMs) throws IOException {
-		maintainConnection();
-		
-		// give the server a chance to make calculations before expecting it to send something
-		sleep(delayInMs); // milliseconds
-		
-		// allocate space to receive lines from server
-		List<String> result = new ArrayList<>();
-		
-		// read lines and store them in the list
-		BufferedReader br = new BufferedReader(new InputStreamReader(inputStream));
-		while(br.ready()) {
-			// only add empty lines
-			String line = br.readLine();
-			if(!line.isEmpty()) {
-				result.add(line);
+	public String query(String query, String answerPrefix, long timeoutMs) throws IOException {
+		CompletableFuture<String> ownAnswer = new CompletableFuture<>();
+		CompletableFuture<String> answer = pendingQueries.putIfAbsent(answerPrefix, ownAnswer);
+		if(answer == null) {
+			// register the query before sending it, so that its answer cannot be missed
+			answer = ownAnswer;
+			try {
+				enqueue(query);
+			} catch (IOException e) {
+				pendingQueries.remove(answerPrefix, ownAnswer);
+				throw e;
 			}
 		}
-		// return list as array of Strings
-		return result.toArray(new String[result.size()]);
+
+		try {
+			return answer.get(timeoutMs, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Query " + query + " was interrupted");
+		} catch (ExecutionException | CancellationException e) {
+			throw new IOException("Query " + query + " failed, the connection has been closed");
+		} finally {
+			pendingQueries.remove(answerPrefix, ownAnswer);
+		}
 	}
-	
+
 	/**
-	 * Sends a message buffered to the WiThrottle server.
+	 * Sends a message to the WiThrottle server. If necessary, the connection is
+	 * repaired beforehand or established first. The call returns as soon as the
+	 * message has been queued, or has replaced an outdated speed or direction
+	 * command waiting in the queue. If the queue is full, the call waits until
+	 * there is space again.
+	 *
 	 * @param s The message
-	 * @throws IOException If something goes wrong
+	 * @throws IOException If interrupted while waiting for space in the queue
 	 */
 	public void send(String s) throws IOException {
-		maintainConnection();
-		
-		BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(outputStream));
-		bw.write(s);
-		bw.newLine();
-		bw.flush();
+		enqueue(s);
+	}
+
+	/**
+	 * @return The number of speed and direction commands that have been replaced
+	 *         by newer ones before being written
+	 */
+	public long getCoalescedCommandCount() {
+		return coalescedCommandCount.get();
 	}
-	
+
+	/**
+	 * @return The number of commands currently waiting to be written
+	 */
+	public int getQueueDepth() {
+		synchronized (queue) {
+			return queue.size();
+		}
+	}
+
+	/**
+	 * @return The largest number of commands that have been waiting to be written
+	 *         at the same time
+	 */
+	public int getMaxQueueDepth() {
+		synchronized (queue) {
+			return maxQueueDepth;
+		}
+	}
+
 	/**
 	 * Sends a single heart beat command to the WiThrottle server
 	 * @throws IOException If something goes wrong
@@ -198,78 +377,309 @@ public class WiThrottleClient {
 	public void sendHeartBeat() throws IOException {
 		send("*");
 	}
-	
-	/**
-	 * Starts a heartbeat transmitter based on the interval expected given in the
-	 * server's welcome message passed as a parameter. Default interval is 10
-	 * seconds.
-	 * 
-	 * @param welcomeMsgLines The server's welcome message
-	 */
-	private void startHeart(String[] welcomeMsgLines) {
-		for(int i = welcomeMsgLines.length - 1; i >= 0; i--) {
-			String line = welcomeMsgLines[i];
-			if(line.startsWith("*")) {
-				this.heartBeatRate = Integer.parseInt(line.substring(1));
-				break;
+
+	/**
+	 * Puts a command into the queue, unless it replaces a waiting speed or
+	 * direction command of the same locomotive. Waits for space in the queue if it
+	 * is full. The writer thread is started if it is not running yet.
+	 *
+	 * @param command The command
+	 * @throws InterruptedIOException If interrupted while waiting for space
+	 */
+	private void enqueue(String command) throws InterruptedIOException {
+		String key = coalescingKey(command);
+		synchronized (queue) {
+			QueuedCommand waiting = key == null ? null : replaceableCommands.get(key);
+			if(waiting != null) {
+				// latest wins: the waiting command is outdated, but keeps its position
+				waiting.command = command;
+				coalescedCommandCount.incrementAndGet();
+				return;
+			}
+			try {
+				while(queue.size() >= queueCapacity) {
+					queue.wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Sending " + command + " was interrupted");
+			}
+			QueuedCommand queued = new QueuedCommand(command);
+			queue.addLast(queued);
+			if(key != null) {
+				replaceableCommands.put(key, queued);
+				// a later speed must not overtake a direction change queued before it, and vice versa
+				replaceableCommands.remove(counterpartKey(key));
+			} else {
+				// commands issued later must not overtake this one by replacing earlier ones
+				replaceableCommands.clear();
+			}
+			maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+			queue.notifyAll();
+
+			if(writerThread == null) {
+				writerThread = new Thread(this::writeQueuedCommands, "WiThrottle writer");
+				writerThread.setDaemon(true);
+				writerThread.start();
 			}
 		}
-		
-		if(heartBeatRate <= 0) {
-			heartBeatRate = 10;
+	}
+
+	/**
+	 * Determines which waiting command a command may replace.
+	 *
+	 * @param command The command
+	 * @return The command up to and including the first character after the
+	 *         separator, e.g. MTAS3&lt;;&gt;V, if it sets the speed or direction
+	 *         of a single locomotive; null if the command must not replace any
+	 *         other command
+	 */
+	private static String coalescingKey(String command) {
+		if(command.length() < 4 || command.charAt(0) != 'M' || command.charAt(2) != 'A') {
+			return null;
 		}
-		
-		startHeart(heartBeatRate - 1);
+		int separatorIndex = command.indexOf(SEPARATOR, 3);
+		int propertyIndex = separatorIndex + SEPARATOR.length();
+		// commands for all locomotives of the throttle affect the others as well
+		if(separatorIndex < 0 || propertyIndex >= command.length() || command.startsWith("*", 3)) {
+			return null;
+		}
+		char property = command.charAt(propertyIndex);
+		return property == 'V' || property == 'R' ? command.substring(0, propertyIndex + 1) : null;
+	}
+
+	/**
+	 * @param key The coalescing key of a speed or direction command
+	 * @return The coalescing key of a direction command if the given key is that
+	 *         of a speed command for the same locomotive, and vice versa
+	 */
+	private static String counterpartKey(String key) {
+		char property = key.charAt(key.length() - 1);
+		return key.substring(0, key.length() - 1) + (property == 'V' ? 'R' : 'V');
 	}
-	
-	/**
-	 * Starts a heartbeat transmitter with the given interval on a new thread
-	 * 
-	 * @param interval The interval at which the heartbeat command is to be sent
-	 */
-	private void startHeart(int interval) {
-		heartActive = true;
-		
-		// prevent a second heartbeat sender to start
-		if(heartbeatThread != null && heartbeatThread.isAlive()) {
-			return;
+
+	/**
+	 * Waits until the queue is empty and the commands taken from it have been
+	 * written.
+	 *
+	 * @param timeoutMs The maximum time to wait
+	 */
+	private void awaitWritten(long timeoutMs) {
+		long deadline = System.currentTimeMillis() + timeoutMs;
+		synchronized (queue) {
+			long remaining = timeoutMs;
+			while((!queue.isEmpty() || writing) && remaining > 0) {
+				try {
+					queue.wait(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				remaining = deadline - System.currentTimeMillis();
+			}
 		}
-		
-		// create heartbeat sender on a separate thread
-		heartbeatThread = new Thread(() -> {
-			System.out.println("Heartbeat sender started @ 1 beat per " + interval + " seconds");
-			do {
+	}
+
+	/**
+	 * Takes all waiting commands from the queue and writes them at once, as long
+	 * as the client exists. Runs on the writer thread. While the commands are
+	 * being written, e.g. blocked by a slow connection, newer commands wait in the
+	 * queue and replace each other.
+	 */
+	private void writeQueuedCommands() {
+		List<String> commands = new ArrayList<>();
+		while(true) {
+			synchronized (queue) {
 				try {
-					// send heartbeat
-					send("*");
-					// sleep
-					Thread.sleep(interval);
+					while(queue.isEmpty()) {
+						queue.wait();
+					}
 				} catch (InterruptedException e) {
-					e.printStackTrace();
-				} catch (IOException e) {
-					e.printStackTrace();
+					return;
 				}
-			} while(heartActive);
-		});
-		// start heartbeating
-		heartbeatThread.start();
+				for(QueuedCommand queued : queue) {
+					commands.add(queued.command);
+				}
+				queue.clear();
+				replaceableCommands.clear();
+				writing = true;
+				queue.notifyAll();
+			}
+
+			try {
+				writeWithRetry(commands);
+			} finally {
+				commands.clear();
+				synchronized (queue) {
+					writing = false;
+					queue.notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the given commands to the connection, (re-)establishing it if
+	 * necessary. If the connection fails meanwhile, it is re-established once and
+	 * the commands are written again.
+	 *
+	 * @param commands The commands
+	 */
+	private synchronized void writeWithRetry(List<String> commands) {
+		try {
+			maintainConnection();
+			write(commands);
+		} catch (IOException e) {
+			try {
+				maintainConnection();
+				write(commands);
+			} catch (IOException retryException) {
+				System.err.println("WiThrottle commands could not be sent: " + commands);
+				retryException.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Writes a single line to the connection.
+	 *
+	 * @param s The line
+	 * @throws IOException If something goes wrong
+	 */
+	private synchronized void write(String s) throws IOException {
+		write(List.of(s));
+	}
+
+	/**
+	 * Writes the given lines to the connection and flushes it once.
+	 *
+	 * @param lines The lines
+	 * @throws IOException If something goes wrong
+	 */
+	private synchronized void write(List<String> lines) throws IOException {
+		try {
+			for(String line : lines) {
+				writer.write(line);
+				writer.newLine();
+			}
+			writer.flush();
+		} catch (IOException e) {
+			connected = false;
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads lines from the given reader until the connection is closed, and
+	 * dispatches them. Runs on the reader thread.
+	 *
+	 * @param connectionReader The reader of the connection
+	 */
+	private void readLines(BufferedReader connectionReader) {
+		try {
+			String line;
+			// lines still buffered from a replaced connection are not dispatched
+			while((line = connectionReader.readLine()) != null && reader == connectionReader) {
+				if(!line.isEmpty()) {
+					dispatch(line);
+				}
+			}
+		} catch (IOException e) {
+			if(connected && reader == connectionReader) {
+				System.err.println("WiThrottle connection failed: " + e.getMessage());
+			}
+		}
+		// only mark the current connection as lost, not a newer one, whose queries are still answered
+		synchronized (this) {
+			if(reader == connectionReader) {
+				connected = false;
+				stopHeart();
+				cancelPendingQueries();
+			}
+		}
+	}
+
+	/**
+	 * Hands a received line to the listeners and to the query it answers, if
+	 * any.
+	 *
+	 * @param line The line
+	 */
+	private void dispatch(String line) {
+		// the server demands heartbeats at the given interval in seconds
+		if(line.startsWith("*") && line.length() > 1) {
+			try {
+				startHeart(Integer.parseInt(line.substring(1).trim()));
+			} catch (NumberFormatException e) {
+				startHeart(DEFAULT_HEARTBEAT_S);
+			}
+		}
+
+		// the listeners come first, so that they have processed an answer once its query returns
+		for(Listener listener : listeners) {
+			try {
+				listener.onLine(line);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+
+		// complete the query answered by the line, if any
+		int separatorIndex = line.indexOf(SEPARATOR);
+		if(separatorIndex >= 0 && line.length() > separatorIndex + SEPARATOR.length()) {
+			CompletableFuture<String> answer = pendingQueries.remove(line.substring(0, separatorIndex + SEPARATOR.length() + 1));
+			if(answer != null) {
+				answer.complete(line);
+			}
+		}
 	}
-	
+
 	/**
-	 * Stops the heartbeat transmitter. Afterwards, at most one more heartbeat is
-	 * sent.
+	 * Cancels all pending queries, since no more lines will be received.
 	 */
-	private void stopHeart() {
-		heartActive = false;
+	private void cancelPendingQueries() {
+		for(CompletableFuture<String> answer : pendingQueries.values()) {
+			answer.cancel(false);
+		}
+		pendingQueries.clear();
 	}
-	
+
 	/**
-	 * Lets the calling thread sleep for a while.
-	 * 
-	 * @param ms The number of milliseconds the calling thread should sleep
+	 * Starts a heartbeat transmitter sending a heartbeat somewhat more often than
+	 * demanded by the server. A heartbeat transmitter already running is replaced.
+	 *
+	 * @param intervalSeconds The interval demanded by the server in seconds
 	 */
-	private void sleep(long ms) {
-		try { Thread.sleep(ms); } catch (InterruptedException e) {}
+	private synchronized void startHeart(int intervalSeconds) {
+		stopHeart();
+		if(intervalSeconds <= 0) {
+			intervalSeconds = DEFAULT_HEARTBEAT_S;
+		}
+		long interval = Math.max(1000, intervalSeconds * 1000L - 1000);
+
+		heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "WiThrottle heartbeat");
+			thread.setDaemon(true);
+			return thread;
+		});
+		heartbeatExecutor.scheduleAtFixedRate(() -> {
+			try {
+				sendHeartBeat();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+		System.out.println("Heartbeat sender started @ 1 beat per " + interval + " ms");
 	}
-	
+
+	/**
+	 * Stops the heartbeat transmitter.
+	 */
+	private synchronized void stopHeart() {
+		if(heartbeatExecutor != null) {
+			heartbeatExecutor.shutdownNow();
+			heartbeatExecutor = null;
+		}
+	}
+
 }
@@ -0,0 +1,71 @@
+package de.wwu.jmrigreenfootinterface.occupancy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns dense ids (0, 1, 2, ...) to the names of layout blocks in the order
+ * in which they become known, so that per-block data can be kept in primitive
+ * arrays instead of maps. Ids are never reassigned.
+ */
+public class BlockRegistry {
+
+	private final Map<String, Integer> idsByName = new ConcurrentHashMap<>();
+	private final List<String> namesById = new ArrayList<>();
+
+	/**
+	 * Returns the id of the given layout block, assigning the next free id if the
+	 * block is not known yet.
+	 * 
+	 * @param blockName The name of the layout block
+	 * @return The id of the layout block
+	 */
+	public int register(String blockName) {
+		Integer id = idsByName.get(blockName);
+		if (id != null) {
+			return id;
+		}
+		synchronized (namesById) {
+			return idsByName.computeIfAbsent(blockName, name -> {
+				namesById.add(name);
+				return namesById.size() - 1;
+			});
+		}
+	}
+
+	/**
+	 * Returns the id of the given layout block without assigning one.
+	 * 
+	 * @param blockName The name of the layout block
+	 * @return The id of the layout block; -1 if the block is not known
+	 */
+	public int getId(String blockName) {
+		Integer id = idsByName.get(blockName);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Returns the name of the layout block with the given id.
+	 * 
+	 * @param id The id of the layout block
+	 * @return The name of the layout block
+	 * @throws IndexOutOfBoundsException If no layout block has the given id
+	 */
+	public String getName(int id) {
+		synchronized (namesById) {
+			return namesById.get(id);
+		}
+	}
+
+	/**
+	 * @return The number of known layout blocks, i.e. the next id to be assigned
+	 */
+	public int size() {
+		synchronized (namesById) {
+			return namesById.size();
+		}
+	}
+
+}
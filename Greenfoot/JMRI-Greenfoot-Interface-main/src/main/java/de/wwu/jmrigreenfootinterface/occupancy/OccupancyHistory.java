@@ -0,0 +1,166 @@
+package de.wwu.jmrigreenfootinterface.occupancy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A record of the most recent transitions of trains between layout blocks. The
+ * transitions are kept in a ring buffer of fixed capacity made up of primitive
+ * arrays, so that the memory used stays the same however long the layout is
+ * operated: once the buffer is full, the oldest transition is overwritten by
+ * each new one.<br>
+ * The transitions are stored in chronological order, so that the transitions
+ * of a period of time can be found by binary search.
+ */
+public class OccupancyHistory {
+
+	private static final byte KIND_ENTERED = 0;
+	private static final byte KIND_EXITED = 1;
+
+	private final BlockRegistry blockRegistry;
+
+	private final long[] timestamps;
+	private final int[] addresses;
+	private final int[] blockIds;
+	private final byte[] kinds;
+
+	/**
+	 * The physical index of the oldest transition
+	 */
+	private int start = 0;
+	private int size = 0;
+
+	/**
+	 * Creates an empty history.
+	 *
+	 * @param capacity      The maximum number of transitions kept
+	 * @param blockRegistry Assigns the ids by which layout blocks are stored
+	 */
+	public OccupancyHistory(int capacity, BlockRegistry blockRegistry) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Invalid capacity: " + capacity);
+		}
+		this.blockRegistry = blockRegistry;
+		this.timestamps = new long[capacity];
+		this.addresses = new int[capacity];
+		this.blockIds = new int[capacity];
+		this.kinds = new byte[capacity];
+	}
+
+	/**
+	 * Records a transition, overwriting the oldest one if the history is full.
+	 * If the clock has been set back, the timestamp of the latest transition is
+	 * used instead, so that the chronological order is kept.
+	 *
+	 * @param timestamp The point in time of the transition in milliseconds
+	 * @param address   The DCC address of the train, e.g. 3
+	 * @param blockName The name of the layout block
+	 * @param kind      Whether the train entered or exited the layout block
+	 */
+	public synchronized void record(long timestamp, int address, String blockName, Transition.Kind kind) {
+		int index;
+		if (size < timestamps.length) {
+			index = physicalIndex(size);
+			size++;
+		} else {
+			index = start;
+			start = physicalIndex(1);
+		}
+		if (size > 1) {
+			timestamp = Math.max(timestamp, timestamps[physicalIndex(size - 2)]);
+		}
+		timestamps[index] = timestamp;
+		addresses[index] = address;
+		blockIds[index] = blockRegistry.register(blockName);
+		kinds[index] = kind == Transition.Kind.ENTERED ? KIND_ENTERED : KIND_EXITED;
+	}
+
+	/**
+	 * Returns the transitions that happened in the given period of time.
+	 *
+	 * @param from The beginning of the period in milliseconds (inclusive)
+	 * @param to   The end of the period in milliseconds (inclusive)
+	 * @return The transitions in chronological order
+	 */
+	public synchronized List<Transition> getTransitions(long from, long to) {
+		List<Transition> transitions = new ArrayList<>();
+		for (int i = firstIndexNotBefore(from); i < size && timestamps[physicalIndex(i)] <= to; i++) {
+			transitions.add(transitionAt(physicalIndex(i)));
+		}
+		return transitions;
+	}
+
+	/**
+	 * Returns the latest transitions of the train with the given DCC address.
+	 *
+	 * @param address The DCC address of the train, e.g. 3
+	 * @param count   The maximum number of transitions to return
+	 * @return The transitions in chronological order
+	 */
+	public synchronized List<Transition> getLastTransitions(int address, int count) {
+		List<Transition> transitions = new ArrayList<>();
+		for (int i = size - 1; i >= 0 && transitions.size() < count; i--) {
+			int index = physicalIndex(i);
+			if (addresses[index] == address) {
+				transitions.add(transitionAt(index));
+			}
+		}
+		Collections.reverse(transitions);
+		return transitions;
+	}
+
+	/**
+	 * @return The number of transitions currently kept
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * @return The maximum number of transitions kept
+	 */
+	public int capacity() {
+		return timestamps.length;
+	}
+
+	/**
+	 * Finds the oldest transition not older than the given point in time.
+	 *
+	 * @param timestamp The point in time in milliseconds
+	 * @return The logical index of that transition; size if there is none
+	 */
+	private int firstIndexNotBefore(long timestamp) {
+		int low = 0, high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (timestamps[physicalIndex(middle)] < timestamp) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Maps the logical index of a transition (0 being the oldest) to its index in
+	 * the arrays.
+	 *
+	 * @param logicalIndex The logical index
+	 * @return The index in the arrays
+	 */
+	private int physicalIndex(int logicalIndex) {
+		return (start + logicalIndex) % timestamps.length;
+	}
+
+	/**
+	 * @param index The index in the arrays
+	 * @return The transition stored at that index
+	 */
+	private Transition transitionAt(int index) {
+		return new Transition(timestamps[index], addresses[index], blockRegistry.getName(blockIds[index]),
+				kinds[index] == KIND_ENTERED ? Transition.Kind.ENTERED : Transition.Kind.EXITED);
+	}
+
+}
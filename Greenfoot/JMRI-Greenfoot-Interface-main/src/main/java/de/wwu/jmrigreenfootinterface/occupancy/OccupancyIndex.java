@@ -0,0 +1,244 @@
+package de.wwu.jmrigreenfootinterface.occupancy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * A thread-safe index of which train occupies which layout block, and vice
+ * versa. Reads never block, so that e.g. the Greenfoot thread can query the
+ * index while it is being updated by the occupancy listener. Updates take
+ * constant time per affected block.<br>
+ * A train may occupy several blocks at a time, up to a configurable maximum,
+ * e.g. because it is longer than a single block. The layout itself is not
+ * known to the index, so it does not check whether these blocks are adjacent.
+ * The blocks of a train are kept in the order they were entered.<br>
+ * Registered OccupancyListeners are informed about every actual change of the
+ * index on the updating thread.
+ */
+public class OccupancyIndex {
+
+	private final ConcurrentHashMap<String, String> trainByBlock = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, Set<String>> blocksByTrain = new ConcurrentHashMap<>();
+	private final List<OccupancyListener> listeners = new CopyOnWriteArrayList<>();
+	private final int maxBlocksPerTrain;
+
+	/**
+	 * Creates an empty index in which a train occupies one layout block at a
+	 * time.
+	 */
+	public OccupancyIndex() {
+		this(1);
+	}
+
+	/**
+	 * Creates an empty index in which a train may occupy several layout blocks at
+	 * a time, e.g. because it is longer than a single block.
+	 * 
+	 * @param maxBlocksPerTrain The maximum number of blocks occupied by a train
+	 */
+	public OccupancyIndex(int maxBlocksPerTrain) {
+		if (maxBlocksPerTrain < 1) {
+			throw new IllegalArgumentException("Invalid maximum number of blocks per train: " + maxBlocksPerTrain);
+		}
+		this.maxBlocksPerTrain = maxBlocksPerTrain;
+	}
+
+	/**
+	 * Registers a listener to be informed about changes of the occupation. The
+	 * current occupation is replayed to the listener right away, i.e. it is
+	 * informed that each train has entered each of its blocks, in the order the
+	 * blocks were entered. This way, the listener does not miss trains that have
+	 * been located before and have not moved since.
+	 * 
+	 * @param listener The listener
+	 */
+	public synchronized void addListener(OccupancyListener listener) {
+		listeners.add(listener);
+		for (Map.Entry<String, Set<String>> trainBlocks : blocksByTrain.entrySet()) {
+			for (String blockName : trainBlocks.getValue()) {
+				try {
+					listener.trainEntered(blockName, trainBlocks.getKey());
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Deregisters a listener.
+	 * 
+	 * @param listener The listener
+	 */
+	public void removeListener(OccupancyListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Returns the train currently occupying the given layout block.
+	 * 
+	 * @param blockName The name of the layout block
+	 * @return The name of the train; null if the block is not known to be occupied
+	 */
+	public String getTrain(String blockName) {
+		return trainByBlock.get(blockName);
+	}
+
+	/**
+	 * Returns the layout blocks currently occupied by the given train.
+	 * 
+	 * @param trainName The name of the train
+	 * @return The names of the layout blocks; empty if the train is not known to
+	 *         occupy any block
+	 */
+	public Set<String> getBlocks(String trainName) {
+		Set<String> blocks = blocksByTrain.get(trainName);
+		return blocks == null ? Collections.emptySet() : Collections.unmodifiableSet(blocks);
+	}
+
+	/**
+	 * Records that the given train occupies the given layout block. A train
+	 * occupies at most maxBlocksPerTrain blocks at a time; if it would occupy
+	 * more, it is removed from the blocks it has occupied the longest.
+	 * 
+	 * @param blockName The name of the layout block
+	 * @param trainName The name of the train
+	 */
+	public synchronized void occupy(String blockName, String trainName) {
+		// nothing changes if the train is already known to occupy the block
+		if (trainName.equals(trainByBlock.get(blockName))) {
+			return;
+		}
+
+		// remove the train from the blocks it has occupied the longest
+		Set<String> trainBlocks = blocksByTrain.computeIfAbsent(trainName, t -> new CopyOnWriteArraySet<>());
+		List<String> leftBlocks = new ArrayList<>();
+		for (String otherBlock : trainBlocks) {
+			if (trainBlocks.size() - leftBlocks.size() < maxBlocksPerTrain) {
+				break;
+			}
+			leftBlocks.add(otherBlock);
+		}
+		for (String otherBlock : leftBlocks) {
+			trainByBlock.remove(otherBlock, trainName);
+			trainBlocks.remove(otherBlock);
+		}
+
+		// replace the train previously occupying the block, if any
+		String previousTrain = trainByBlock.put(blockName, trainName);
+		if (previousTrain != null) {
+			removeBlockOfTrain(previousTrain, blockName);
+		}
+		trainBlocks.add(blockName);
+
+		// inform the listeners
+		if (previousTrain != null) {
+			fireExited(blockName, previousTrain);
+		}
+		for (String leftBlock : leftBlocks) {
+			fireExited(leftBlock, trainName);
+		}
+		fireEntered(blockName, trainName);
+		for (String leftBlock : leftBlocks) {
+			fireMoved(trainName, leftBlock, blockName);
+		}
+	}
+
+	/**
+	 * Records that the given train no longer occupies the given layout block.
+	 * Nothing changes if the block is occupied by another train. If the train
+	 * still occupies other blocks, it has moved on from the released block to
+	 * the block it has entered most recently, so the listeners are informed about
+	 * that move as well.
+	 * 
+	 * @param blockName The name of the layout block
+	 * @param trainName The name of the train
+	 */
+	public synchronized void release(String blockName, String trainName) {
+		if (trainName.equals(trainByBlock.get(blockName))) {
+			clear(blockName);
+			String newestBlock = null;
+			for (String remainingBlock : getBlocks(trainName)) {
+				newestBlock = remainingBlock;
+			}
+			if (newestBlock != null) {
+				fireMoved(trainName, blockName, newestBlock);
+			}
+		}
+	}
+
+	/**
+	 * Records that the given layout block is no longer occupied.
+	 * 
+	 * @param blockName The name of the layout block
+	 */
+	public synchronized void clear(String blockName) {
+		String previousTrain = trainByBlock.remove(blockName);
+		if (previousTrain != null) {
+			removeBlockOfTrain(previousTrain, blockName);
+			fireExited(blockName, previousTrain);
+		}
+	}
+
+	/**
+	 * Records that no layout block is occupied anymore.
+	 */
+	public synchronized void clearAll() {
+		for (String blockName : new ArrayList<>(trainByBlock.keySet())) {
+			clear(blockName);
+		}
+	}
+
+	/**
+	 * Removes the given layout block from the blocks of the given train.
+	 * 
+	 * @param trainName The name of the train
+	 * @param blockName The name of the layout block
+	 */
+	private void removeBlockOfTrain(String trainName, String blockName) {
+		Set<String> blocks = blocksByTrain.get(trainName);
+		if (blocks != null) {
+			blocks.remove(blockName);
+			if (blocks.isEmpty()) {
+				blocksByTrain.remove(trainName);
+			}
+		}
+	}
+
+	private void fireEntered(String blockName, String trainName) {
+		for (OccupancyListener listener : listeners) {
+			try {
+				listener.trainEntered(blockName, trainName);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void fireExited(String blockName, String trainName) {
+		for (OccupancyListener listener : listeners) {
+			try {
+				listener.trainExited(blockName, trainName);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void fireMoved(String trainName, String fromBlockName, String toBlockName) {
+		for (OccupancyListener listener : listeners) {
+			try {
+				listener.trainMoved(trainName, fromBlockName, toBlockName);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+}
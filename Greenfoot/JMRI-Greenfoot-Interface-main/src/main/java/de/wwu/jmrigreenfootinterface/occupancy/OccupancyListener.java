@@ -0,0 +1,43 @@
+package de.wwu.jmrigreenfootinterface.occupancy;
+
+/**
+ * Is informed whenever the occupation of layout blocks by trains changes. The
+ * methods are only called for actual changes, not for every poll of the
+ * reporters. They are called on the background thread polling the reporters,
+ * so they should return quickly and must take care of thread safety
+ * themselves. All methods do nothing by default, so that implementations only
+ * need to override the events they are interested in.
+ */
+public interface OccupancyListener {
+
+	/**
+	 * Called when a train has been identified on a layout block it did not occupy
+	 * before.
+	 * 
+	 * @param blockName The name of the layout block
+	 * @param trainName The name of the train
+	 */
+	public default void trainEntered(String blockName, String trainName) {
+	}
+
+	/**
+	 * Called when a train no longer occupies a layout block.
+	 * 
+	 * @param blockName The name of the layout block
+	 * @param trainName The name of the train
+	 */
+	public default void trainExited(String blockName, String trainName) {
+	}
+
+	/**
+	 * Called in addition to trainExited and trainEntered when a train has left a
+	 * layout block because it entered another one.
+	 * 
+	 * @param trainName     The name of the train
+	 * @param fromBlockName The name of the layout block the train has left
+	 * @param toBlockName   The name of the layout block the train has entered
+	 */
+	public default void trainMoved(String trainName, String fromBlockName, String toBlockName) {
+	}
+
+}
@@ -0,0 +1,106 @@
+package de.wwu.jmrigreenfootinterface.occupancy;
+
+import java.util.BitSet;
+
+/**
+ * A table of which layout blocks are occupied, combining two sources: the
+ * trains identified by reporters and the occupation sensed by JMRI itself, i.e.
+ * the state of the layout blocks. A block is occupied if either source says so.
+ * <br>
+ * The blocks are identified by the dense ids of a BlockRegistry and the state
+ * of each source is kept in a BitSet. After every change, the combined state is
+ * published as a new BitSet, so that reading the state of a block takes
+ * constant time, never blocks and never contacts JMRI.
+ */
+public class OccupancyTable {
+
+	private final BlockRegistry blockRegistry;
+
+	private final BitSet reported = new BitSet();
+	private final BitSet sensed = new BitSet();
+	/**
+	 * The combined state; replaced, but never modified once published
+	 */
+	private volatile BitSet occupied = new BitSet();
+
+	/**
+	 * Creates a table in which no block is occupied.
+	 *
+	 * @param blockRegistry Assigns the ids by which layout blocks are stored
+	 */
+	public OccupancyTable(BlockRegistry blockRegistry) {
+		this.blockRegistry = blockRegistry;
+	}
+
+	/**
+	 * Records whether a train has been identified on the given layout block by a
+	 * reporter.
+	 *
+	 * @param blockName The name of the layout block
+	 * @param occupied  Whether a train has been identified on the block
+	 * @return true if the recorded state has changed
+	 */
+	public synchronized boolean setReported(String blockName, boolean occupied) {
+		return update(reported, blockName, occupied);
+	}
+
+	/**
+	 * Records whether JMRI senses the given layout block as occupied.
+	 *
+	 * @param blockName The name of the layout block
+	 * @param occupied  Whether the block is sensed as occupied
+	 * @return true if the recorded state has changed
+	 */
+	public synchronized boolean setSensed(String blockName, boolean occupied) {
+		return update(sensed, blockName, occupied);
+	}
+
+	/**
+	 * Records that no layout block is occupied.
+	 */
+	public synchronized void clear() {
+		reported.clear();
+		sensed.clear();
+		occupied = new BitSet();
+	}
+
+	/**
+	 * @param blockName The name of the layout block
+	 * @return true if the block is occupied according to any source; false if it
+	 *         is not or if the block is not known
+	 */
+	public boolean isOccupied(String blockName) {
+		int id = blockRegistry.getId(blockName);
+		return id >= 0 && occupied.get(id);
+	}
+
+	/**
+	 * @param blockId The id of the layout block in the BlockRegistry
+	 * @return true if the block is occupied according to any source
+	 */
+	public boolean isOccupied(int blockId) {
+		return occupied.get(blockId);
+	}
+
+	/**
+	 * Sets the bit of the given layout block in the given source and publishes
+	 * the combined state, if it has changed.
+	 *
+	 * @param source    The BitSet of the source
+	 * @param blockName The name of the layout block
+	 * @param value     The new value of the bit
+	 * @return true if the bit has changed
+	 */
+	private boolean update(BitSet source, String blockName, boolean value) {
+		int id = blockRegistry.register(blockName);
+		if (source.get(id) == value) {
+			return false;
+		}
+		source.set(id, value);
+		BitSet combined = (BitSet) reported.clone();
+		combined.or(sensed);
+		occupied = combined;
+		return true;
+	}
+
+}
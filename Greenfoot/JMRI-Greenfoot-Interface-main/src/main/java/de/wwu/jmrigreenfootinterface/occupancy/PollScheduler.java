@@ -0,0 +1,58 @@
+package de.wwu.jmrigreenfootinterface.occupancy;
+
+/**
+ * Determines the interval between two polls of the reporters. As long as the
+ * polled reports do not change, the interval is doubled after every poll until
+ * the maximum interval is reached. As soon as any report changes, the interval
+ * drops back to the minimum, so that moving trains are followed closely while
+ * an idle layout is hardly polled at all.
+ */
+public class PollScheduler {
+
+	private final long minIntervalMs;
+	private final long maxIntervalMs;
+	private volatile long intervalMs;
+
+	/**
+	 * Creates a scheduler starting at the minimum interval.
+	 *
+	 * @param minIntervalMs The interval used while reports are changing
+	 * @param maxIntervalMs The interval used while reports have not changed for
+	 *                      some time
+	 */
+	public PollScheduler(long minIntervalMs, long maxIntervalMs) {
+		if (minIntervalMs <= 0 || maxIntervalMs < minIntervalMs) {
+			throw new IllegalArgumentException(
+					"Invalid poll intervals: min " + minIntervalMs + " ms, max " + maxIntervalMs + " ms");
+		}
+		this.minIntervalMs = minIntervalMs;
+		this.maxIntervalMs = maxIntervalMs;
+		this.intervalMs = minIntervalMs;
+	}
+
+	/**
+	 * Adapts the interval to the result of the poll just completed.
+	 *
+	 * @param changed Whether any report has changed since the previous poll
+	 * @return The interval to wait before the next poll
+	 */
+	public long next(boolean changed) {
+		intervalMs = changed ? minIntervalMs : Math.min(maxIntervalMs, intervalMs * 2);
+		return intervalMs;
+	}
+
+	/**
+	 * Drops the interval back to the minimum, e.g. because a change is expected.
+	 */
+	public void reset() {
+		intervalMs = minIntervalMs;
+	}
+
+	/**
+	 * @return The interval currently waited between two polls
+	 */
+	public long getIntervalMs() {
+		return intervalMs;
+	}
+
+}
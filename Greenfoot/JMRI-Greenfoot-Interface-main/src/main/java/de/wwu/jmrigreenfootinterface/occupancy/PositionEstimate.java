@@ -0,0 +1,66 @@
+package de.wwu.jmrigreenfootinterface.occupancy;
+
+/**
+ * An immutable estimate of where a train is within the layout block it has
+ * entered last and how fast it is moving.
+ */
+public final class PositionEstimate {
+
+	private final String blockName;
+	private final double distance;
+	private final double speed;
+	private final long timestamp;
+
+	/**
+	 * Creates an estimate with the given properties.
+	 *
+	 * @param blockName The name of the layout block the train has entered last
+	 * @param distance  The distance the train has travelled since entering the
+	 *                  block, in the unit of the configured block lengths
+	 * @param speed     The speed of the train in the unit of the configured block
+	 *                  lengths per second
+	 * @param timestamp The point in time the estimate refers to in milliseconds
+	 */
+	public PositionEstimate(String blockName, double distance, double speed, long timestamp) {
+		this.blockName = blockName;
+		this.distance = distance;
+		this.speed = speed;
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * @return The name of the layout block the train has entered last
+	 */
+	public String getBlockName() {
+		return blockName;
+	}
+
+	/**
+	 * @return The distance the train has travelled since entering the block, in
+	 *         the unit of the configured block lengths
+	 */
+	public double getDistance() {
+		return distance;
+	}
+
+	/**
+	 * @return The speed of the train in the unit of the configured block lengths
+	 *         per second
+	 */
+	public double getSpeed() {
+		return speed;
+	}
+
+	/**
+	 * @return The point in time the estimate refers to in milliseconds
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	@Override
+	public String toString() {
+		return "PositionEstimate[" + blockName + " + " + distance + " at " + speed + "/s]";
+	}
+
+}
@@ -0,0 +1,199 @@
+package de.wwu.jmrigreenfootinterface.occupancy;
+
+/**
+ * Parses the reports of JMRI reporters into the DCC address of the reported
+ * train and whether it has entered or exited the monitored block. The report is
+ * scanned character by character, so that no substrings or other objects are
+ * created; the result of the latest call of parse is kept in the parser. A
+ * parser must therefore not be shared between threads.<br>
+ * The following formats are understood (letters are case-insensitive):
+ * <ul>
+ * <li>LocoNet transponding: <code>3 enter</code>, <code>3 exits</code>, as
+ * well as LISSY's <code>3 seen northbound</code> (treated as entering)</li>
+ * <li>RailCom: the address, optionally preceded by <code>ID</code> and the
+ * address type <code>S</code> or <code>L</code>, e.g. <code>L1234</code>; the
+ * train is present as long as it is reported. A following <code>enter</code>
+ * or <code>exit</code> is respected.</li>
+ * <li>Arduino-based detectors: <code>3:1</code> when the train enters and
+ * <code>3:0</code> when it exits</li>
+ * </ul>
+ */
+public class ReportParser {
+
+	/**
+	 * The formats of reports
+	 */
+	public enum Format {
+		LOCONET, RAILCOM, ARDUINO
+	}
+
+	/**
+	 * More digits cannot be a DCC address
+	 */
+	private static final int MAX_ADDRESS_DIGITS = 5;
+
+	private int address;
+	private boolean exit;
+	private boolean longAddress;
+	private Format format;
+
+	/**
+	 * Parses the given report. If it cannot be parsed, e.g. because it is empty,
+	 * the result of the previous call is discarded.
+	 *
+	 * @param report The report of a reporter
+	 * @return true if the report has been understood
+	 */
+	public boolean parse(CharSequence report) {
+		address = -1;
+		exit = false;
+		longAddress = false;
+		format = null;
+		if (report == null) {
+			return false;
+		}
+
+		int length = report.length();
+		int i = skipWhitespace(report, 0);
+		Format detectedFormat = null;
+
+		// RailCom tags may be prefixed by ID and the type of the address
+		if (matchesWord(report, i, "ID", false)) {
+			detectedFormat = Format.RAILCOM;
+			i += 2;
+		}
+		if (i + 1 < length && isAddressType(report.charAt(i)) && isDigit(report.charAt(i + 1))) {
+			detectedFormat = Format.RAILCOM;
+			longAddress = Character.toUpperCase(report.charAt(i)) == 'L';
+			i++;
+		}
+
+		// the address
+		int digits = 0;
+		int parsedAddress = 0;
+		while (i < length && isDigit(report.charAt(i))) {
+			if (++digits > MAX_ADDRESS_DIGITS) {
+				return false;
+			}
+			parsedAddress = parsedAddress * 10 + (report.charAt(i) - '0');
+			i++;
+		}
+		if (digits == 0) {
+			return false;
+		}
+
+		boolean parsedExit;
+		if (detectedFormat == null && i < length && report.charAt(i) == ':') {
+			// Arduino: presence flag after a colon
+			if (i + 1 >= length || (report.charAt(i + 1) != '0' && report.charAt(i + 1) != '1')) {
+				return false;
+			}
+			detectedFormat = Format.ARDUINO;
+			parsedExit = report.charAt(i + 1) == '0';
+			i += 2;
+		} else {
+			// LocoNet or RailCom: direction as word, if any
+			int wordStart = skipWhitespace(report, i);
+			if (wordStart == length) {
+				if (detectedFormat == null) {
+					// a bare address is reported by RailCom reporters
+					detectedFormat = Format.RAILCOM;
+				}
+				parsedExit = false;
+			} else if (wordStart == i) {
+				// the address has to be followed by whitespace
+				return false;
+			} else if (matchesWord(report, wordStart, "exits", true) || matchesWord(report, wordStart, "exit", true)) {
+				parsedExit = true;
+			} else if (matchesWord(report, wordStart, "enters", true) || matchesWord(report, wordStart, "enter", true)
+					|| matchesWord(report, wordStart, "seen", true)) {
+				parsedExit = false;
+			} else {
+				return false;
+			}
+			if (detectedFormat == null) {
+				detectedFormat = Format.LOCONET;
+			}
+			i = length;
+		}
+		if (skipWhitespace(report, i) != length) {
+			return false;
+		}
+
+		address = parsedAddress;
+		exit = parsedExit;
+		format = detectedFormat;
+		return true;
+	}
+
+	/**
+	 * @return The DCC address of the train of the latest parsed report; -1 if that
+	 *         report could not be parsed
+	 */
+	public int getAddress() {
+		return address;
+	}
+
+	/**
+	 * @return true if the train of the latest parsed report has exited the block;
+	 *         false if it has entered or is present in the block
+	 */
+	public boolean isExit() {
+		return exit;
+	}
+
+	/**
+	 * @return true if the latest parsed report explicitly denoted a long address
+	 */
+	public boolean isLongAddress() {
+		return longAddress;
+	}
+
+	/**
+	 * @return The format of the latest parsed report; null if it could not be
+	 *         parsed
+	 */
+	public Format getFormat() {
+		return format;
+	}
+
+	/**
+	 * Checks whether the given word starts at the given position. Unless the word
+	 * is a prefix, it has to be followed by whitespace or the end of the report.
+	 *
+	 * @param report   The report
+	 * @param start    The position in the report
+	 * @param word     The word in lower or upper case
+	 * @param complete Whether the word has to be complete
+	 * @return true if the word starts at the given position
+	 */
+	private static boolean matchesWord(CharSequence report, int start, String word, boolean complete) {
+		int end = start + word.length();
+		if (end > report.length()) {
+			return false;
+		}
+		for (int i = 0; i < word.length(); i++) {
+			if (Character.toLowerCase(report.charAt(start + i)) != Character.toLowerCase(word.charAt(i))) {
+				return false;
+			}
+		}
+		return !complete || end == report.length() || Character.isWhitespace(report.charAt(end));
+	}
+
+	private static int skipWhitespace(CharSequence report, int start) {
+		int i = start;
+		while (i < report.length() && Character.isWhitespace(report.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isAddressType(char c) {
+		return c == 'S' || c == 's' || c == 'L' || c == 'l';
+	}
+
+}
@@ -0,0 +1,103 @@
+package de.wwu.jmrigreenfootinterface.occupancy;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Assigns the reporters created in JMRI to the layout blocks they monitor.
+ * The assignment is either read from the configuration file or derived from
+ * the blocks in JMRI, each of which may be associated with a reporter. Looking
+ * up the layout block of a reporter takes constant time.
+ */
+public class ReporterBlockMap {
+
+	/**
+	 * The name of the layout block by the name of the reporter monitoring it
+	 */
+	private final Map<String, String> blockNamesByReporter;
+	/**
+	 * The name of the layout block assigned to all reporters not explicitly
+	 * mapped; may be null
+	 */
+	private final String defaultBlockName;
+
+	/**
+	 * Creates a map with the given assignments.
+	 * 
+	 * @param blockNamesByReporter The name of the layout block by the name of the
+	 *                             reporter monitoring it
+	 * @param defaultBlockName     The name of the layout block assigned to all
+	 *                             other reporters; null if they are to be ignored
+	 */
+	public ReporterBlockMap(Map<String, String> blockNamesByReporter, String defaultBlockName) {
+		this.blockNamesByReporter = new HashMap<>(blockNamesByReporter);
+		this.defaultBlockName = defaultBlockName;
+	}
+
+	/**
+	 * Reads the assignments from the occupancy section of the configuration, e.g.
+	 * <code>{"reporters": {"IR100": "Links"}, "defaultBlock": "Weiche"}</code>.
+	 * 
+	 * @param occupancyConfig The occupancy section of the configuration; may be
+	 *                        null
+	 * @return The configured map; null if no reporters are configured, so that the
+	 *         map has to be derived from JMRI instead
+	 */
+	public static ReporterBlockMap fromConfig(JSONObject occupancyConfig) {
+		if (occupancyConfig == null || !occupancyConfig.has("reporters")) {
+			return null;
+		}
+		JSONObject reporters = occupancyConfig.getJSONObject("reporters");
+		Map<String, String> blockNamesByReporter = new HashMap<>();
+		for (String reporterName : reporters.keySet()) {
+			blockNamesByReporter.put(reporterName, reporters.getString(reporterName));
+		}
+		return new ReporterBlockMap(blockNamesByReporter, occupancyConfig.optString("defaultBlock", null));
+	}
+
+	/**
+	 * Derives the assignments from the blocks created in JMRI. Every block with a
+	 * reporter is assigned to that reporter by its user name (which layout blocks
+	 * share with their blocks) or, if it has none, by its system name.
+	 * 
+	 * @param blocks           The blocks as JSONArray, as returned by JMRI
+	 * @param defaultBlockName The name of the layout block assigned to all other
+	 *                         reporters; null if they are to be ignored
+	 * @return The derived map
+	 */
+	public static ReporterBlockMap fromBlocks(JSONArray blocks, String defaultBlockName) {
+		Map<String, String> blockNamesByReporter = new HashMap<>();
+		for (int i = 0; i < blocks.length(); i++) {
+			JSONObject data = blocks.getJSONObject(i).getJSONObject("data");
+			if (data.isNull("reporter")) {
+				continue;
+			}
+			String blockName = data.isNull("userName") ? data.getString("name") : data.getString("userName");
+			blockNamesByReporter.put(data.getString("reporter"), blockName);
+		}
+		return new ReporterBlockMap(blockNamesByReporter, defaultBlockName);
+	}
+
+	/**
+	 * Returns the name of the layout block monitored by the given reporter.
+	 * 
+	 * @param reporterName The name of the reporter, e.g. IR100
+	 * @return The name of the layout block; null if the reporter is not assigned
+	 *         to any layout block
+	 */
+	public String getBlockName(String reporterName) {
+		String blockName = blockNamesByReporter.get(reporterName);
+		return blockName != null ? blockName : defaultBlockName;
+	}
+
+	/**
+	 * @return The number of explicitly mapped reporters
+	 */
+	public int size() {
+		return blockNamesByReporter.size();
+	}
+
+}
@@ -0,0 +1,118 @@
+package de.wwu.jmrigreenfootinterface.occupancy;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import de.wwu.jmrigreenfootinterface.items.RosterEntry;
+
+/**
+ * An index of the roster by DCC address, so that the train reported at a
+ * certain address can be looked up without requesting the roster again. The
+ * index is rebuilt as a whole whenever a new roster is passed to it; lookups
+ * never block and always see either the old or the new index.
+ */
+public class RosterIndex {
+
+	private volatile Map<String, RosterEntry> entriesByName = Collections.emptyMap();
+	/**
+	 * The numeric addresses in ascending order and the roster entries in the
+	 * same order, for lookups without boxing the address
+	 */
+	private volatile AddressTable addressTable = new AddressTable(new int[0], new RosterEntry[0]);
+
+	private static final class AddressTable {
+		private final int[] addresses;
+		private final RosterEntry[] entries;
+
+		private AddressTable(int[] addresses, RosterEntry[] entries) {
+			this.addresses = addresses;
+			this.entries = entries;
+		}
+	}
+	private volatile long lastRefresh = 0;
+
+	/**
+	 * Replaces the indexed roster entries by the given ones.
+	 * 
+	 * @param rosterEntries The complete roster
+	 */
+	public void refresh(List<RosterEntry> rosterEntries) {
+		Map<String, RosterEntry> newEntriesByName = new HashMap<>(rosterEntries.size() * 2);
+		for (RosterEntry rosterEntry : rosterEntries) {
+			newEntriesByName.put(rosterEntry.getName(), rosterEntry);
+		}
+		entriesByName = newEntriesByName;
+		addressTable = buildAddressTable(rosterEntries);
+		lastRefresh = System.currentTimeMillis();
+	}
+
+	/**
+	 * Returns the roster entry of the train with the given DCC address. The
+	 * lookup does not create any objects.
+	 * 
+	 * @param address The DCC address, e.g. 3
+	 * @return The roster entry; null if no train with that address is indexed
+	 */
+	public RosterEntry lookup(int address) {
+		AddressTable table = addressTable;
+		int index = Arrays.binarySearch(table.addresses, address);
+		return index < 0 ? null : table.entries[index];
+	}
+
+	/**
+	 * Returns the roster entry of the train with the given name.
+	 * 
+	 * @param name The name of the train
+	 * @return The roster entry; null if no train with that name is indexed
+	 */
+	public RosterEntry lookupByName(String name) {
+		return entriesByName.get(name);
+	}
+
+	/**
+	 * @return The point in time of the last refresh in milliseconds; 0 if the
+	 *         index has never been refreshed
+	 */
+	public long getLastRefresh() {
+		return lastRefresh;
+	}
+
+	/**
+	 * Sorts the roster entries with numeric addresses by their address. Of
+	 * several entries with the same address, the last one is kept.
+	 * 
+	 * @param rosterEntries The roster entries
+	 * @return The sorted addresses and entries
+	 */
+	private static AddressTable buildAddressTable(List<RosterEntry> rosterEntries) {
+		Map<Integer, RosterEntry> numericEntries = new TreeMap<>();
+		for (RosterEntry rosterEntry : rosterEntries) {
+			try {
+				numericEntries.put(Integer.parseInt(rosterEntry.getAddress().trim()), rosterEntry);
+			} catch (NumberFormatException e) {
+				// cannot be reported by address
+			}
+		}
+		int[] addresses = new int[numericEntries.size()];
+		RosterEntry[] entries = new RosterEntry[numericEntries.size()];
+		int i = 0;
+		for (Map.Entry<Integer, RosterEntry> entry : numericEntries.entrySet()) {
+			addresses[i] = entry.getKey();
+			entries[i] = entry.getValue();
+			i++;
+		}
+		return new AddressTable(addresses, entries);
+	}
+
+	/**
+	 * @return The number of indexed roster entries
+	 */
+	public int size() {
+		return entriesByName.size();
+	}
+
+}
@@ -0,0 +1,176 @@
+package de.wwu.jmrigreenfootinterface.occupancy;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.JSONObject;
+
+/**
+ * Estimates the position and speed of trains from the times at which they
+ * enter layout blocks. When a train enters a block, the time it took to pass
+ * the block entered before yields its speed, provided the length of that block
+ * is known. Until the train enters the next block, it is assumed to keep that
+ * speed, so that its position within the current block and the time until it
+ * reaches the next block can be extrapolated without asking JMRI.<br>
+ * The estimator is fed as an OccupancyListener and can be queried by any
+ * thread. Its accuracy depends on how soon a train entering a block is
+ * noticed, i.e. on the interval between two polls of the reporters; hence the
+ * reporters should be polled at the minimum interval while a train is
+ * expected to reach its next block (see hasTrainInMotion).
+ */
+public class TrainEstimator implements OccupancyListener {
+
+	/**
+	 * The immutable state of a single train
+	 */
+	private static final class TrainState {
+		private final String blockName;
+		private final long enteredAt;
+		/**
+		 * In length units per millisecond; NaN if not known yet
+		 */
+		private final double speed;
+		/**
+		 * Whether the train still occupies the block
+		 */
+		private final boolean located;
+
+		private TrainState(String blockName, long enteredAt, double speed, boolean located) {
+			this.blockName = blockName;
+			this.enteredAt = enteredAt;
+			this.speed = speed;
+			this.located = located;
+		}
+	}
+
+	private final Map<String, Double> blockLengths;
+	private final Map<String, TrainState> states = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates an estimator knowing the given lengths of layout blocks.
+	 *
+	 * @param blockLengths The length of each layout block by its name, in an
+	 *                     arbitrary but common unit, e.g. cm
+	 */
+	public TrainEstimator(Map<String, Double> blockLengths) {
+		this.blockLengths = new HashMap<>(blockLengths);
+	}
+
+	/**
+	 * Creates an estimator knowing the lengths of layout blocks given in the
+	 * blockLengths object of the occupancy configuration, e.g.
+	 * <code>{"Links": 120, "Oben": 80}</code>.
+	 *
+	 * @param occupancyConfig The occupancy section of the configuration; may be
+	 *                        null
+	 * @return The estimator; without any block lengths if none are configured
+	 */
+	public static TrainEstimator fromConfig(JSONObject occupancyConfig) {
+		JSONObject lengthsConfig = occupancyConfig == null ? null : occupancyConfig.optJSONObject("blockLengths");
+		if (lengthsConfig == null) {
+			return new TrainEstimator(Collections.emptyMap());
+		}
+		Map<String, Double> blockLengths = new HashMap<>();
+		for (String blockName : lengthsConfig.keySet()) {
+			blockLengths.put(blockName, lengthsConfig.getDouble(blockName));
+		}
+		return new TrainEstimator(blockLengths);
+	}
+
+	@Override
+	public void trainEntered(String blockName, String trainName) {
+		long now = System.currentTimeMillis();
+		TrainState previous = states.get(trainName);
+		double speed = Double.NaN;
+		if (previous != null) {
+			speed = previous.speed;
+			// the time it took to pass the previous block yields the speed
+			Double previousLength = blockLengths.get(previous.blockName);
+			if (previousLength != null && !previous.blockName.equals(blockName) && now > previous.enteredAt) {
+				speed = previousLength / (now - previous.enteredAt);
+			}
+		}
+		states.put(trainName, new TrainState(blockName, now, speed, true));
+	}
+
+	@Override
+	public void trainExited(String blockName, String trainName) {
+		// keep the timing, since the train usually enters the next block right away
+		states.computeIfPresent(trainName, (name, state) -> state.blockName.equals(blockName)
+				? new TrainState(state.blockName, state.enteredAt, state.speed, false)
+				: state);
+	}
+
+	/**
+	 * Determines whether any train is expected to reach its next layout block
+	 * soon, i.e. whether it is located, its speed and the length of its current
+	 * block are known, and it has been in the block for less than twice the
+	 * time it should take to pass it. Trains that have apparently stopped are
+	 * not considered any more.
+	 *
+	 * @return true if any train is expected to reach its next block soon
+	 */
+	public boolean hasTrainInMotion() {
+		long now = System.currentTimeMillis();
+		for (TrainState state : states.values()) {
+			if (!state.located || Double.isNaN(state.speed) || state.speed <= 0) {
+				continue;
+			}
+			Double length = blockLengths.get(state.blockName);
+			if (length != null && now - state.enteredAt < 2 * length / state.speed) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Estimates the current position and speed of the given train. The entry of
+	 * the train into its current block may have been noticed up to one poll
+	 * interval late, which delays the estimate accordingly.
+	 *
+	 * @param trainName The name of the train
+	 * @return The estimate; null if the train is not located or its speed is not
+	 *         known yet
+	 */
+	public PositionEstimate getEstimatedPosition(String trainName) {
+		TrainState state = states.get(trainName);
+		if (state == null || !state.located || Double.isNaN(state.speed)) {
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		double distance = state.speed * (now - state.enteredAt);
+		// the train has not left the block yet, so it cannot be any further
+		Double length = blockLengths.get(state.blockName);
+		if (length != null) {
+			distance = Math.min(distance, length);
+		}
+		return new PositionEstimate(state.blockName, distance, state.speed * 1000, now);
+	}
+
+	/**
+	 * Estimates the time until the given train reaches the next layout block. The
+	 * entry of the train into its current block may have been noticed up to one
+	 * poll interval late, which makes the estimate too long accordingly.
+	 *
+	 * @param trainName The name of the train
+	 * @return The estimated time in milliseconds; 0 if the train is overdue; -1 if
+	 *         the train is not located, its speed is not known yet or the length
+	 *         of its current block is not known
+	 */
+	public long getEta(String trainName) {
+		TrainState state = states.get(trainName);
+		if (state == null || !state.located || Double.isNaN(state.speed) || state.speed <= 0) {
+			return -1;
+		}
+		Double length = blockLengths.get(state.blockName);
+		if (length == null) {
+			return -1;
+		}
+		long arrival = state.enteredAt + Math.round(length / state.speed);
+		return Math.max(0, arrival - System.currentTimeMillis());
+	}
+
+}
@@ -0,0 +1,68 @@
+package de.wwu.jmrigreenfootinterface.occupancy;
+
+/**
+ * An immutable record of a train entering or exiting a layout block.
+ */
+public final class Transition {
+
+	/**
+	 * The kinds of transitions
+	 */
+	public enum Kind {
+		ENTERED, EXITED
+	}
+
+	private final long timestamp;
+	private final int address;
+	private final String blockName;
+	private final Kind kind;
+
+	/**
+	 * Creates a record of a transition with the given properties.
+	 * 
+	 * @param timestamp The point in time of the transition in milliseconds
+	 * @param address   The DCC address of the train, e.g. 3
+	 * @param blockName The name of the layout block
+	 * @param kind      Whether the train entered or exited the layout block
+	 */
+	public Transition(long timestamp, int address, String blockName, Kind kind) {
+		this.timestamp = timestamp;
+		this.address = address;
+		this.blockName = blockName;
+		this.kind = kind;
+	}
+
+	/**
+	 * @return The point in time of the transition in milliseconds
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @return The DCC address of the train, e.g. 3
+	 */
+	public int getAddress() {
+		return address;
+	}
+
+	/**
+	 * @return The name of the layout block
+	 */
+	public String getBlockName() {
+		return blockName;
+	}
+
+	/**
+	 * @return Whether the train entered or exited the layout block
+	 */
+	public Kind getKind() {
+		return kind;
+	}
+
+	@Override
+	public String toString() {
+		return "Transition[" + timestamp + ": " + address + " " + kind + " " + blockName + "]";
+	}
+
+}
@@ -0,0 +1,177 @@
+package de.wwu.jmrigreenfootinterface.net;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the outbound queue of the WiThrottleClient against a local server
+ * recording the lines it receives. To make commands wait in the queue, the
+ * test holds the lock of the client, which the writer thread needs to write.
+ */
+public class WiThrottleClientTest {
+
+	private static final long TIMEOUT_MS = 2000;
+
+	private ServerSocket serverSocket;
+	private final BlockingQueue<String> receivedLines = new LinkedBlockingQueue<>();
+	private WiThrottleClient client;
+
+	@BeforeEach
+	public void startServer() throws IOException {
+		serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		Thread serverThread = new Thread(() -> {
+			try (Socket socket = serverSocket.accept();
+					BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+				String line;
+				while((line = reader.readLine()) != null) {
+					// skip the login of the client
+					if(!line.startsWith("N") && !line.startsWith("HU")) {
+						receivedLines.add(line);
+					}
+				}
+			} catch (IOException e) {
+				// the test has ended
+			}
+		}, "WiThrottle test server");
+		serverThread.setDaemon(true);
+		serverThread.start();
+	}
+
+	@AfterEach
+	public void stopServer() throws IOException {
+		serverSocket.close();
+	}
+
+	private void connect(int queueCapacity) throws IOException {
+		client = new WiThrottleClient(InetAddress.getLoopbackAddress().getHostAddress(),
+				String.valueOf(serverSocket.getLocalPort()), "Test", queueCapacity);
+		client.connect();
+	}
+
+	/**
+	 * Sends a heartbeat and waits until the writer thread has taken it from the
+	 * queue. Has to be called while holding the lock of the client, so that the
+	 * writer thread is then blocked and subsequent commands wait in the queue.
+	 */
+	private void blockWriter() throws Exception {
+		client.send("*");
+		long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+		while(client.getQueueDepth() > 0) {
+			assertTrue(System.currentTimeMillis() < deadline, "The writer thread has not taken the heartbeat");
+			Thread.sleep(1);
+		}
+	}
+
+	/**
+	 * Sends the given commands while the writer thread is blocked, so that they
+	 * are all waiting in the queue at the same time.
+	 */
+	private void sendQueued(String... commands) throws Exception {
+		synchronized (client) {
+			blockWriter();
+			for(String command : commands) {
+				client.send(command);
+			}
+		}
+	}
+
+	private void assertReceived(String... expectedLines) throws InterruptedException {
+		List<String> lines = new ArrayList<>();
+		for(int i = 0; i <= expectedLines.length; i++) {
+			String line = receivedLines.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+			assertNotNull(line, "Received only " + lines);
+			lines.add(line);
+		}
+		List<String> expected = new ArrayList<>();
+		expected.add("*");
+		expected.addAll(Arrays.asList(expectedLines));
+		assertEquals(expected, lines);
+		// nothing else has been written
+		assertNull(receivedLines.poll(100, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void coalescesSpeedsOfTheSameLocomotive() throws Exception {
+		connect(WiThrottleClient.DEFAULT_QUEUE_CAPACITY);
+		sendQueued("MTAS3<;>V10", "MTAS4<;>V5", "MTAS3<;>V20", "MTAS3<;>V30");
+		assertReceived("MTAS3<;>V30", "MTAS4<;>V5");
+		assertEquals(2, client.getCoalescedCommandCount());
+	}
+
+	@Test
+	public void keepsSpeedAndDirectionInOrder() throws Exception {
+		connect(WiThrottleClient.DEFAULT_QUEUE_CAPACITY);
+		sendQueued("MTAS3<;>V0", "MTAS3<;>R0", "MTAS3<;>V20", "MTAS3<;>V30", "MTAS3<;>R1", "MTAS3<;>R0");
+		assertReceived("MTAS3<;>V0", "MTAS3<;>R0", "MTAS3<;>V30", "MTAS3<;>R0");
+	}
+
+	@Test
+	public void doesNotCoalesceAcrossFunctions() throws Exception {
+		connect(WiThrottleClient.DEFAULT_QUEUE_CAPACITY);
+		sendQueued("MTAS3<;>V10", "MTAS3<;>F11", "MTAS3<;>V20", "MTAS3<;>F01", "MTAS3<;>F11");
+		assertReceived("MTAS3<;>V10", "MTAS3<;>F11", "MTAS3<;>V20", "MTAS3<;>F01", "MTAS3<;>F11");
+		assertEquals(0, client.getCoalescedCommandCount());
+	}
+
+	@Test
+	public void doesNotCoalesceAcrossEmergencyStops() throws Exception {
+		connect(WiThrottleClient.DEFAULT_QUEUE_CAPACITY);
+		sendQueued("MTAS3<;>V10", "MTAS3<;>X", "MTAS3<;>V20", "MTAS3<;>X");
+		assertReceived("MTAS3<;>V10", "MTAS3<;>X", "MTAS3<;>V20", "MTAS3<;>X");
+	}
+
+	@Test
+	public void doesNotCoalesceQueries() throws Exception {
+		connect(WiThrottleClient.DEFAULT_QUEUE_CAPACITY);
+		sendQueued("MTAS3<;>V10", "MTAS3<;>qV", "MTAS3<;>V20", "MTAS3<;>qV");
+		assertReceived("MTAS3<;>V10", "MTAS3<;>qV", "MTAS3<;>V20", "MTAS3<;>qV");
+	}
+
+	@Test
+	public void blocksInsteadOfDroppingWhenFull() throws Exception {
+		connect(2);
+		Thread sender;
+		synchronized (client) {
+			blockWriter();
+			client.send("MTAS3<;>F11");
+			client.send("MTAS3<;>F01");
+			sender = new Thread(() -> {
+				try {
+					client.send("MTAS3<;>X");
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			});
+			sender.start();
+			sender.join(200);
+			assertTrue(sender.isAlive(), "Sending to a full queue has not waited");
+			assertEquals(2, client.getQueueDepth());
+		}
+		sender.join(TIMEOUT_MS);
+		assertFalse(sender.isAlive(), "Sending has not continued once there was space");
+		assertReceived("MTAS3<;>F11", "MTAS3<;>F01", "MTAS3<;>X");
+		assertEquals(2, client.getMaxQueueDepth());
+	}
+
+}
@@ -0,0 +1,97 @@
+package de.wwu.jmrigreenfootinterface.occupancy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import de.wwu.jmrigreenfootinterface.occupancy.Transition.Kind;
+
+/**
+ * Tests the ring buffer of the OccupancyHistory, in particular once it has
+ * wrapped around.
+ */
+public class OccupancyHistoryTest {
+
+	private final OccupancyHistory history = new OccupancyHistory(4, new BlockRegistry());
+
+	private static List<Long> timestamps(List<Transition> transitions) {
+		List<Long> timestamps = new ArrayList<>();
+		for (Transition transition : transitions) {
+			timestamps.add(transition.getTimestamp());
+		}
+		return timestamps;
+	}
+
+	@Test
+	public void keepsTheNewestTransitionsWhenFull() {
+		for (int i = 1; i <= 6; i++) {
+			history.record(i * 100, i, "Block" + i, Kind.ENTERED);
+		}
+		assertEquals(4, history.size());
+		assertEquals(4, history.capacity());
+
+		List<Transition> transitions = history.getTransitions(Long.MIN_VALUE, Long.MAX_VALUE);
+		assertEquals(List.of(300L, 400L, 500L, 600L), timestamps(transitions));
+		assertEquals("Block3", transitions.get(0).getBlockName());
+		assertEquals(3, transitions.get(0).getAddress());
+		assertEquals("Block6", transitions.get(3).getBlockName());
+	}
+
+	@Test
+	public void findsPeriodsAcrossTheWrapPoint() {
+		// 100 and 200 are overwritten; 300 and 400 are stored at the end of the arrays, 500 and 600 at the beginning
+		for (int i = 1; i <= 6; i++) {
+			history.record(i * 100, 3, "Links", Kind.ENTERED);
+		}
+		assertEquals(List.of(400L, 500L), timestamps(history.getTransitions(400, 500)));
+		assertEquals(List.of(300L, 400L, 500L, 600L), timestamps(history.getTransitions(250, 650)));
+		assertEquals(List.of(500L, 600L), timestamps(history.getTransitions(450, 600)));
+		assertEquals(List.of(300L), timestamps(history.getTransitions(300, 300)));
+		assertTrue(history.getTransitions(100, 200).isEmpty());
+		assertTrue(history.getTransitions(601, 700).isEmpty());
+		assertTrue(history.getTransitions(500, 400).isEmpty());
+	}
+
+	@Test
+	public void returnsTheLastTransitionsOfATrain() {
+		history.record(100, 3, "Links", Kind.ENTERED);
+		history.record(200, 5, "Oben", Kind.ENTERED);
+		history.record(300, 3, "Links", Kind.EXITED);
+		history.record(400, 3, "Rechts", Kind.ENTERED);
+		history.record(500, 5, "Oben", Kind.EXITED);
+		history.record(600, 3, "Rechts", Kind.EXITED);
+
+		List<Transition> lastTwo = history.getLastTransitions(3, 2);
+		assertEquals(List.of(400L, 600L), timestamps(lastTwo));
+		assertEquals(Kind.ENTERED, lastTwo.get(0).getKind());
+		assertEquals(Kind.EXITED, lastTwo.get(1).getKind());
+		assertEquals("Rechts", lastTwo.get(1).getBlockName());
+
+		// the transition at 100 has been overwritten
+		assertEquals(List.of(300L, 400L, 600L), timestamps(history.getLastTransitions(3, 10)));
+		assertEquals(List.of(500L), timestamps(history.getLastTransitions(5, 10)));
+		assertTrue(history.getLastTransitions(7, 10).isEmpty());
+		assertTrue(history.getLastTransitions(3, 0).isEmpty());
+	}
+
+	@Test
+	public void keepsTheOrderIfTheClockIsSetBack() {
+		history.record(100, 3, "Links", Kind.ENTERED);
+		history.record(500, 3, "Links", Kind.EXITED);
+		history.record(200, 3, "Oben", Kind.ENTERED);
+		history.record(600, 3, "Oben", Kind.EXITED);
+		// wraps around while the clock is set back again
+		history.record(50, 3, "Rechts", Kind.ENTERED);
+
+		List<Transition> transitions = history.getTransitions(Long.MIN_VALUE, Long.MAX_VALUE);
+		assertEquals(List.of(500L, 500L, 600L, 600L), timestamps(transitions));
+		assertEquals("Oben", transitions.get(1).getBlockName());
+		assertEquals("Rechts", transitions.get(3).getBlockName());
+		assertEquals(List.of(500L, 500L), timestamps(history.getTransitions(500, 599)));
+	}
+
+}
@@ -0,0 +1,136 @@
+package de.wwu.jmrigreenfootinterface.occupancy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests how the OccupancyIndex assigns layout blocks to trains and in which
+ * order it informs its listeners.
+ */
+public class OccupancyIndexTest {
+
+	private final List<String> events = new ArrayList<>();
+
+	private final OccupancyListener recorder = new OccupancyListener() {
+		@Override
+		public void trainEntered(String blockName, String trainName) {
+			events.add("entered " + blockName + " " + trainName);
+		}
+
+		@Override
+		public void trainExited(String blockName, String trainName) {
+			events.add("exited " + blockName + " " + trainName);
+		}
+
+		@Override
+		public void trainMoved(String trainName, String fromBlockName, String toBlockName) {
+			events.add("moved " + trainName + " " + fromBlockName + " " + toBlockName);
+		}
+	};
+
+	private OccupancyIndex createIndex(int maxBlocksPerTrain) {
+		OccupancyIndex index = new OccupancyIndex(maxBlocksPerTrain);
+		index.addListener(recorder);
+		return index;
+	}
+
+	@Test
+	public void movesTrainsHoldingASingleBlock() {
+		OccupancyIndex index = createIndex(1);
+		index.occupy("A", "T");
+		index.occupy("B", "T");
+
+		assertEquals(List.of("entered A T", "exited A T", "entered B T", "moved T A B"), events);
+		assertNull(index.getTrain("A"));
+		assertEquals("T", index.getTrain("B"));
+		assertEquals(List.of("B"), new ArrayList<>(index.getBlocks("T")));
+	}
+
+	@Test
+	public void letsTrainsHoldTwoBlocks() {
+		OccupancyIndex index = createIndex(2);
+		index.occupy("A", "T");
+		index.occupy("B", "T");
+		assertEquals(List.of("entered A T", "entered B T"), events);
+		assertEquals(List.of("A", "B"), new ArrayList<>(index.getBlocks("T")));
+
+		// the block held the longest is left
+		events.clear();
+		index.occupy("C", "T");
+		assertEquals(List.of("exited A T", "entered C T", "moved T A C"), events);
+		assertEquals(List.of("B", "C"), new ArrayList<>(index.getBlocks("T")));
+		assertNull(index.getTrain("A"));
+	}
+
+	@Test
+	public void ignoresRepeatedOccupation() {
+		OccupancyIndex index = createIndex(2);
+		index.occupy("A", "T");
+		index.occupy("A", "T");
+		assertEquals(List.of("entered A T"), events);
+	}
+
+	@Test
+	public void letsAnotherTrainTakeOverABlock() {
+		OccupancyIndex index = createIndex(2);
+		index.occupy("A", "T1");
+		index.occupy("B", "T1");
+		events.clear();
+
+		index.occupy("B", "T2");
+		assertEquals(List.of("exited B T1", "entered B T2"), events);
+		assertEquals("T2", index.getTrain("B"));
+		assertEquals(List.of("A"), new ArrayList<>(index.getBlocks("T1")));
+		assertEquals(List.of("B"), new ArrayList<>(index.getBlocks("T2")));
+	}
+
+	@Test
+	public void ignoresReleaseByAnotherTrain() {
+		OccupancyIndex index = createIndex(2);
+		index.occupy("A", "T1");
+		events.clear();
+
+		index.release("A", "T2");
+		index.release("B", "T1");
+		assertTrue(events.isEmpty());
+		assertEquals("T1", index.getTrain("A"));
+	}
+
+	@Test
+	public void reportsMovesWhenTheTrailingBlockIsReleased() {
+		OccupancyIndex index = createIndex(2);
+		index.occupy("A", "T");
+		index.occupy("B", "T");
+		index.release("A", "T");
+		index.occupy("C", "T");
+		index.release("B", "T");
+		index.release("C", "T");
+
+		assertEquals(List.of("entered A T", "entered B T",
+				"exited A T", "moved T A B",
+				"entered C T",
+				"exited B T", "moved T B C",
+				"exited C T"), events);
+		assertTrue(index.getBlocks("T").isEmpty());
+	}
+
+	@Test
+	public void replaysTheOccupationToNewListeners() {
+		OccupancyIndex index = new OccupancyIndex(2);
+		index.occupy("A", "T1");
+		index.occupy("B", "T1");
+		index.occupy("C", "T2");
+
+		index.addListener(recorder);
+		assertEquals(3, events.size());
+		assertTrue(events.indexOf("entered A T1") < events.indexOf("entered B T1"));
+		assertTrue(events.contains("entered C T2"));
+	}
+
+}
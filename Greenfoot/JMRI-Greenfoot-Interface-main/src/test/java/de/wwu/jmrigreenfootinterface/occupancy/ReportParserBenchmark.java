@@ -0,0 +1,59 @@
+package de.wwu.jmrigreenfootinterface.occupancy;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * A small benchmark measuring the time and the memory allocated per parsed
+ * report, using a mix of reports of all supported formats. It is not run as a
+ * test, but started manually after <code>mvn test-compile</code>:
+ * <pre>
+ * java -cp target/classes:target/test-classes de.wwu.jmrigreenfootinterface.occupancy.ReportParserBenchmark
+ * </pre>
+ */
+public class ReportParserBenchmark {
+
+	private static final String[] REPORTS = { "3 enter", "1234 exits", "3 seen northbound", "ID1234", "L1234 exit",
+			"S3", "3:1", "3:0", "", "3 (L) enter" };
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int MEASURED_ROUNDS = 10;
+	private static final int REPORTS_PER_ROUND = 10_000_000;
+
+	public static void main(String[] args) {
+		ReportParser parser = new ReportParser();
+		for(int round = 0; round < WARMUP_ROUNDS; round++) {
+			run(parser);
+		}
+
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		long checksum = 0;
+		for(int round = 0; round < MEASURED_ROUNDS; round++) {
+			checksum += run(parser);
+		}
+		long elapsed = System.nanoTime() - start;
+		long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+		long reports = (long) MEASURED_ROUNDS * REPORTS_PER_ROUND;
+		System.out.printf("%.1f ns per report, %.3f bytes allocated per report (checksum %d)%n",
+				(double) elapsed / reports, (double) allocated / reports, checksum);
+	}
+
+	/**
+	 * Parses REPORTS_PER_ROUND reports.
+	 *
+	 * @param parser The parser
+	 * @return A checksum of the results, so that the work cannot be optimised away
+	 */
+	private static long run(ReportParser parser) {
+		long checksum = 0;
+		for(int i = 0; i < REPORTS_PER_ROUND; i++) {
+			if(parser.parse(REPORTS[i % REPORTS.length])) {
+				checksum += parser.getAddress() + (parser.isExit() ? 1 : 0);
+			}
+		}
+		return checksum;
+	}
+
+}
@@ -0,0 +1,99 @@
+package de.wwu.jmrigreenfootinterface.occupancy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import de.wwu.jmrigreenfootinterface.occupancy.ReportParser.Format;
+
+/**
+ * Tests the ReportParser with reports of each supported format as well as with
+ * reports it has to reject.
+ */
+public class ReportParserTest {
+
+	private final ReportParser parser = new ReportParser();
+
+	private void assertParsed(String report, Format format, int address, boolean exit) {
+		assertTrue(parser.parse(report), "Not understood: " + report);
+		assertEquals(format, parser.getFormat(), report);
+		assertEquals(address, parser.getAddress(), report);
+		assertEquals(exit, parser.isExit(), report);
+	}
+
+	private void assertRejected(String report) {
+		assertFalse(parser.parse(report), "Understood: " + report);
+		assertEquals(-1, parser.getAddress(), report);
+		assertNull(parser.getFormat(), report);
+	}
+
+	@Test
+	public void parsesLocoNetReports() {
+		assertParsed("3 enter", Format.LOCONET, 3, false);
+		assertParsed("3 enters", Format.LOCONET, 3, false);
+		assertParsed("1234 exits", Format.LOCONET, 1234, true);
+		assertParsed("  42 EXIT  ", Format.LOCONET, 42, true);
+	}
+
+	@Test
+	public void parsesLissyReports() {
+		assertParsed("3 seen northbound", Format.LOCONET, 3, false);
+		assertParsed("17 seen southbound", Format.LOCONET, 17, false);
+	}
+
+	@Test
+	public void parsesRailComReports() {
+		assertParsed("1234", Format.RAILCOM, 1234, false);
+		assertParsed("ID1234", Format.RAILCOM, 1234, false);
+		assertParsed("S3", Format.RAILCOM, 3, false);
+		assertFalse(parser.isLongAddress());
+		assertParsed("L1234", Format.RAILCOM, 1234, false);
+		assertTrue(parser.isLongAddress());
+		assertParsed("IDL1234 exit", Format.RAILCOM, 1234, true);
+		assertTrue(parser.isLongAddress());
+		assertParsed("s3 enter", Format.RAILCOM, 3, false);
+	}
+
+	@Test
+	public void parsesArduinoReports() {
+		assertParsed("3:1", Format.ARDUINO, 3, false);
+		assertParsed("3:0", Format.ARDUINO, 3, true);
+		assertParsed(" 1234:0 ", Format.ARDUINO, 1234, true);
+	}
+
+	@Test
+	public void rejectsMalformedReports() {
+		assertRejected(null);
+		assertRejected("");
+		assertRejected("   ");
+		assertRejected("3 (L) enter");
+		assertRejected("3enter");
+		assertRejected("3 entering");
+		assertRejected("3:2");
+		assertRejected("3:");
+		assertRejected("3:1 enter");
+		assertRejected("123456 enter");
+		assertRejected("enter");
+		assertRejected("L");
+	}
+
+	@Test
+	public void discardsPreviousResultOnRejection() {
+		assertParsed("L1234 exit", Format.RAILCOM, 1234, true);
+		assertRejected("garbage");
+		assertFalse(parser.isExit());
+		assertFalse(parser.isLongAddress());
+	}
+
+	@Test
+	public void acceptsCharSequences() {
+		StringBuilder report = new StringBuilder("5 exits");
+		assertParsed(report.toString(), Format.LOCONET, 5, true);
+		assertTrue(parser.parse(report));
+		assertEquals(5, parser.getAddress());
+	}
+
+}